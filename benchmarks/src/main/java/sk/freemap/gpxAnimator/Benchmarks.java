@@ -0,0 +1,85 @@
+/*
+ *  Copyright 2013 Martin Ždila, Freemap Slovakia
+ *  Licensed under the Apache License, Version 2.0 (the "License");
+ *  you may not use this file except in compliance with the License.
+ *  You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *  Unless required by applicable law or agreed to in writing, software
+ *  distributed under the License is distributed on an "AS IS" BASIS,
+ *  WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *  See the License for the specific language governing permissions and
+ *  limitations under the License.
+ */
+package sk.freemap.gpxAnimator;
+
+import java.awt.BasicStroke;
+import java.awt.Color;
+import java.awt.Graphics2D;
+import java.awt.geom.Path2D;
+import java.awt.image.BufferedImage;
+import java.io.File;
+import java.util.Random;
+
+/**
+ * Helpers shared by benchmarks.
+ */
+final class Benchmarks {
+
+	private Benchmarks() {
+		throw new AssertionError();
+	}
+
+
+	static int getWidth(final String resolution) {
+		return Integer.parseInt(resolution.substring(0, resolution.indexOf('x')));
+	}
+
+
+	static int getHeight(final String resolution) {
+		return Integer.parseInt(resolution.substring(resolution.indexOf('x') + 1));
+	}
+
+
+	/**
+	 * @return frame resembling rendered one, with white background and several random tracks
+	 */
+	static BufferedImage createFrame(final int width, final int height) {
+		final BufferedImage bi = new BufferedImage(width, height, BufferedImage.TYPE_3BYTE_BGR);
+		final Graphics2D g2 = Renderer.createGraphics(bi);
+		g2.setColor(Color.white);
+		g2.fillRect(0, 0, width, height);
+
+		final Random random = new Random(0L);
+		for (int i = 0; i < 10; i++) {
+			final Path2D.Double path = new Path2D.Double();
+			double x = random.nextDouble() * width;
+			double y = random.nextDouble() * height;
+			path.moveTo(x, y);
+			for (int j = 0; j < 2000; j++) {
+				x = Math.max(0, Math.min(width, x + random.nextGaussian() * 4.0));
+				y = Math.max(0, Math.min(height, y + random.nextGaussian() * 4.0));
+				path.lineTo(x, y);
+			}
+			g2.setColor(Color.getHSBColor(i / 10f, 0.8f, 0.8f));
+			g2.setStroke(new BasicStroke(2f, BasicStroke.CAP_ROUND, BasicStroke.JOIN_ROUND));
+			g2.draw(path);
+		}
+
+		g2.dispose();
+		return bi;
+	}
+
+
+	static void deleteDirectory(final File dir) {
+		final File[] files = dir.listFiles();
+		if (files != null) {
+			for (final File file : files) {
+				file.delete();
+			}
+		}
+		dir.delete();
+	}
+
+}
@@ -0,0 +1,156 @@
+/*
+ *  Copyright 2013 Martin Ždila, Freemap Slovakia
+ *  Licensed under the Apache License, Version 2.0 (the "License");
+ *  you may not use this file except in compliance with the License.
+ *  You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *  Unless required by applicable law or agreed to in writing, software
+ *  distributed under the License is distributed on an "AS IS" BASIS,
+ *  WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *  See the License for the specific language governing permissions and
+ *  limitations under the License.
+ */
+package sk.freemap.gpxAnimator;
+
+import java.awt.BasicStroke;
+import java.awt.Color;
+import java.awt.Font;
+import java.awt.Graphics2D;
+import java.awt.Shape;
+import java.awt.font.TextLayout;
+import java.awt.geom.AffineTransform;
+import java.awt.geom.Line2D;
+import java.awt.image.BufferedImage;
+import java.text.DateFormat;
+import java.util.Date;
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+
+/**
+ * Drawing primitives used for every frame: texts with halo drawn from sprites or from outlines,
+ * and drawing with a reused Graphics2D compared to creating one for every draw call.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3)
+@Measurement(iterations = 5)
+@Fork(1)
+public class DrawingBenchmark {
+
+	private static final String TEXT = "Created by GPX Animator";
+
+	@Param({ "12", "24" })
+	public int fontSize;
+
+	private BufferedImage bi;
+
+	private Graphics2D g2;
+
+	private Font font;
+
+	private TextSpriteCache textSprites;
+
+	private final String[] dates = new String[1000];
+
+	private final Line2D.Double line = new Line2D.Double();
+
+	private final BasicStroke stroke = new BasicStroke(2f, BasicStroke.CAP_ROUND, BasicStroke.JOIN_ROUND);
+
+	private int counter;
+
+
+	@Setup(Level.Trial)
+	public void setUp() {
+		bi = Benchmarks.createFrame(1920, 1080);
+		g2 = Renderer.createGraphics(bi);
+		font = new Font(Font.MONOSPACED, Font.PLAIN, fontSize);
+		textSprites = new TextSpriteCache(font);
+
+		final DateFormat dateFormat = DateFormat.getDateTimeInstance(DateFormat.MEDIUM, DateFormat.MEDIUM);
+		for (int i = 0; i < dates.length; i++) {
+			dates[i] = dateFormat.format(new Date(1577836800000L + i * 20000L));
+		}
+	}
+
+
+	@TearDown(Level.Trial)
+	public void tearDown() {
+		g2.dispose();
+	}
+
+
+	// label moving by a fraction of pixel, like label of a marker
+	private float nextX() {
+		return 100f + (counter++ % 1000) * 0.37f;
+	}
+
+
+	@Benchmark
+	public Object spriteText() {
+		return textSprites.drawText(g2, TEXT, nextX(), 500f);
+	}
+
+
+	@Benchmark
+	public Object glyphTime() {
+		return textSprites.drawGlyphs(g2, dates[counter++ % dates.length], 1700f, 1060f);
+	}
+
+
+	@Benchmark
+	public Object outlineText() {
+		final float x = nextX();
+		final TextLayout tl = new TextLayout(TEXT, font, g2.getFontRenderContext());
+		final Shape outline = tl.getOutline(AffineTransform.getTranslateInstance(x, 500f));
+		g2.setStroke(new BasicStroke(3f, BasicStroke.CAP_ROUND, BasicStroke.JOIN_ROUND));
+		g2.setColor(Color.white);
+		g2.fill(outline);
+		g2.draw(outline);
+		g2.setFont(font);
+		g2.setColor(Color.black);
+		g2.drawString(TEXT, x, 500f);
+		return outline;
+	}
+
+
+	@Benchmark
+	public Object graphicsPerDraw() {
+		final Graphics2D g = Renderer.createGraphics(bi);
+		drawSegment(g);
+		g.dispose();
+		return g;
+	}
+
+
+	@Benchmark
+	public Object reusedGraphics() {
+		drawSegment(g2);
+		return g2;
+	}
+
+
+	private void drawSegment(final Graphics2D g) {
+		final double x = 100.0 + counter++ % 1000;
+		line.setLine(x, 300.0, x + 3.0, 302.0);
+		g.setStroke(stroke);
+		g.setColor(Color.red);
+		g.draw(line);
+	}
+
+}
@@ -0,0 +1,166 @@
+/*
+ *  Copyright 2013 Martin Ždila, Freemap Slovakia
+ *  Licensed under the Apache License, Version 2.0 (the "License");
+ *  you may not use this file except in compliance with the License.
+ *  You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *  Unless required by applicable law or agreed to in writing, software
+ *  distributed under the License is distributed on an "AS IS" BASIS,
+ *  WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *  See the License for the specific language governing permissions and
+ *  limitations under the License.
+ */
+package sk.freemap.gpxAnimator;
+
+import java.awt.Color;
+import java.awt.image.BufferedImage;
+import java.io.File;
+import java.io.IOException;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OperationsPerInvocation;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+import org.openjdk.jmh.infra.Blackhole;
+
+import sk.freemap.gpxAnimator.frameWriter.FrameBuffer;
+import sk.freemap.gpxAnimator.frameWriter.FrameWriter;
+
+/**
+ * Whole rendering of a short animation without encoding the frames: track history, tail, markers, waypoints and texts.
+ * Score is time per frame; it is not the cost of a single frame, as it includes loading of tracks from the .gpxbin cache,
+ * filling of the background and starting of rendering threads, spread over all rendered frames.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 2)
+@Measurement(iterations = 5)
+@Fork(1)
+public class EndToEndRenderBenchmark {
+
+	private static final int FRAMES = 60;
+
+	private static final int POINTS = 3000;
+
+	private static final RenderingContext NO_PROGRESS = new RenderingContext() {
+		@Override
+		public void setProgress1(final int pct, final String message) {
+		}
+
+		@Override
+		public boolean isCancelled1() {
+			return false;
+		}
+	};
+
+	@Param({ "1280x720", "1920x1080", "3840x2160" })
+	public String resolution;
+
+	@Param({ "1", "10", "100", "500" })
+	public int tracks;
+
+	// 0 for no tail
+	@Param({ "0", "600000" })
+	public long tailDuration;
+
+	private File dir;
+
+	private Configuration cfg;
+
+
+	@Setup(Level.Trial)
+	public void setUp() throws IOException, UserException {
+		dir = File.createTempFile("benchmark", "");
+		dir.delete();
+		dir.mkdir();
+
+		// 20 seconds of tracks per frame; tail is complete after half of the frames
+		final Configuration.Builder builder = Configuration.createBuilder()
+				.width(Benchmarks.getWidth(resolution))
+				.height(Benchmarks.getHeight(resolution))
+				.fps(30.0)
+				.speedup(600.0)
+				.tailDuration(tailDuration)
+				.gpxCache(true)
+				.endFrame(FRAMES)
+				.output(new File(dir, "benchmark.mp4"));
+
+		for (int i = 0; i < tracks; i++) {
+			final File gpxFile = new File(dir, "track" + i + ".gpx");
+			SyntheticGpx.write(gpxFile, POINTS, i);
+			builder.addTrackConfiguration(TrackConfiguration.createBuilder()
+					.inputGpx(gpxFile)
+					.label("T" + i)
+					.color(Color.getHSBColor((float) i / tracks, 0.9f, 0.9f))
+					.build());
+		}
+
+		cfg = builder.build();
+
+		// creates the .gpxbin files
+		render(null);
+	}
+
+
+	@TearDown(Level.Trial)
+	public void tearDown() {
+		Benchmarks.deleteDirectory(dir);
+	}
+
+
+	@Benchmark
+	@OperationsPerInvocation(FRAMES)
+	public void render(final Blackhole blackhole) throws UserException {
+		new Renderer(cfg) {
+			@Override
+			FrameWriter createFrameWriter(final String frameFilePattern, final String ext, final boolean toImages, final int startFrame,
+					final int width, final int height, final ThreadFactory threadFactory) {
+				return new DiscardingFrameWriter(blackhole);
+			}
+		}.render(NO_PROGRESS);
+	}
+
+
+	private static final class DiscardingFrameWriter implements FrameWriter {
+
+		private final Blackhole blackhole;
+
+		DiscardingFrameWriter(final Blackhole blackhole) {
+			this.blackhole = blackhole;
+		}
+
+		@Override
+		public void addFrame(final BufferedImage bi) {
+			if (blackhole != null) {
+				blackhole.consume(bi);
+			}
+		}
+
+		@Override
+		public void addFrame(final FrameBuffer frame) {
+			addFrame(frame.getImage());
+			frame.release();
+		}
+
+		@Override
+		public void close() {
+		}
+
+	}
+
+}
@@ -0,0 +1,98 @@
+/*
+ *  Copyright 2013 Martin Ždila, Freemap Slovakia
+ *  Licensed under the Apache License, Version 2.0 (the "License");
+ *  you may not use this file except in compliance with the License.
+ *  You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *  Unless required by applicable law or agreed to in writing, software
+ *  distributed under the License is distributed on an "AS IS" BASIS,
+ *  WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *  See the License for the specific language governing permissions and
+ *  limitations under the License.
+ */
+package sk.freemap.gpxAnimator;
+
+import java.awt.image.BufferedImage;
+import java.io.File;
+import java.io.IOException;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OperationsPerInvocation;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+
+import sk.freemap.gpxAnimator.frameWriter.FileFrameWriter;
+
+/**
+ * Encoding of PNG and JPEG frames to files. Score is time per frame, including waiting
+ * for parallel writes at the end.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 2)
+@Measurement(iterations = 5)
+@Fork(1)
+public class FileFrameWriterBenchmark {
+
+	private static final int FRAMES = 16;
+
+	@Param({ "png", "jpg" })
+	public String format;
+
+	@Param({ "1280x720", "1920x1080" })
+	public String resolution;
+
+	// empty for default quality
+	@Param({ "", "0.5" })
+	public String compressionQuality;
+
+	@Param({ "1", "4" })
+	public int encoderThreads;
+
+	private File dir;
+
+	private BufferedImage frame;
+
+
+	@Setup(Level.Trial)
+	public void setUp() throws IOException {
+		dir = File.createTempFile("benchmark", "");
+		dir.delete();
+		dir.mkdir();
+		frame = Benchmarks.createFrame(Benchmarks.getWidth(resolution), Benchmarks.getHeight(resolution));
+	}
+
+
+	@TearDown(Level.Trial)
+	public void tearDown() {
+		Benchmarks.deleteDirectory(dir);
+	}
+
+
+	@Benchmark
+	@OperationsPerInvocation(FRAMES)
+	public void write() throws UserException {
+		final FileFrameWriter writer = new FileFrameWriter(new File(dir, "frame%06d." + format).getPath(), format, 30.0, 1,
+				encoderThreads, compressionQuality.isEmpty() ? null : Float.valueOf(compressionQuality), Executors.defaultThreadFactory());
+		for (int i = 0; i < FRAMES; i++) {
+			writer.addFrame(frame);
+		}
+		writer.close();
+	}
+
+}
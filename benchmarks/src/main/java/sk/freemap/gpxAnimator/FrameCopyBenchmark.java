@@ -0,0 +1,97 @@
+/*
+ *  Copyright 2013 Martin Ždila, Freemap Slovakia
+ *  Licensed under the Apache License, Version 2.0 (the "License");
+ *  you may not use this file except in compliance with the License.
+ *  You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *  Unless required by applicable law or agreed to in writing, software
+ *  distributed under the License is distributed on an "AS IS" BASIS,
+ *  WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *  See the License for the specific language governing permissions and
+ *  limitations under the License.
+ */
+package sk.freemap.gpxAnimator;
+
+import java.awt.Rectangle;
+import java.awt.image.BufferedImage;
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import sk.freemap.gpxAnimator.frameWriter.FrameBuffer;
+import sk.freemap.gpxAnimator.frameWriter.FrameBufferPool;
+
+/**
+ * Copying of frame rasters: allocating deep copy, copy to a pooled frame buffer and restoring of dirty regions.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3)
+@Measurement(iterations = 5)
+@Fork(1)
+public class FrameCopyBenchmark {
+
+	@Param({ "1280x720", "1920x1080", "3840x2160" })
+	public String resolution;
+
+	private BufferedImage src;
+
+	private BufferedImage dst;
+
+	private FrameBufferPool pool;
+
+	private Rectangle[] dirtyRects;
+
+
+	@Setup
+	public void setUp() {
+		final int width = Benchmarks.getWidth(resolution);
+		final int height = Benchmarks.getHeight(resolution);
+		src = Benchmarks.createFrame(width, height);
+		dst = Benchmarks.createFrame(width, height);
+		pool = new FrameBufferPool(1, width, height);
+
+		// typical per-frame changes: tails and markers of several tracks and the time text
+		dirtyRects = new Rectangle[32];
+		for (int i = 0; i < dirtyRects.length; i++) {
+			dirtyRects[i] = new Rectangle(i * width / dirtyRects.length, i * height / dirtyRects.length, 60, 40);
+		}
+	}
+
+
+	@Benchmark
+	public Object deepCopy() {
+		return Utils.deepCopy(src);
+	}
+
+
+	@Benchmark
+	public Object pooledCopy() throws InterruptedException {
+		final FrameBuffer frame = pool.copyOf(src);
+		frame.release();
+		return frame;
+	}
+
+
+	@Benchmark
+	public Object dirtyRegions() {
+		for (final Rectangle rect : dirtyRects) {
+			Utils.copyRect(src, dst, rect);
+		}
+		return dst;
+	}
+
+}
@@ -0,0 +1,92 @@
+/*
+ *  Copyright 2013 Martin Ždila, Freemap Slovakia
+ *  Licensed under the Apache License, Version 2.0 (the "License");
+ *  you may not use this file except in compliance with the License.
+ *  You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *  Unless required by applicable law or agreed to in writing, software
+ *  distributed under the License is distributed on an "AS IS" BASIS,
+ *  WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *  See the License for the specific language governing permissions and
+ *  limitations under the License.
+ */
+package sk.freemap.gpxAnimator;
+
+import java.io.File;
+import java.io.IOException;
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+
+/**
+ * Reading of input tracks: SAX parser, StAX parser and the projected .gpxbin cache.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 3)
+@Measurement(iterations = 5)
+@Fork(1)
+public class GpxParseBenchmark {
+
+	@Param({ "10000", "100000", "1000000" })
+	public int points;
+
+	private File gpxFile;
+
+
+	@Setup(Level.Trial)
+	public void setUp() throws IOException, UserException {
+		gpxFile = File.createTempFile("benchmark", ".gpx");
+		SyntheticGpx.write(gpxFile, points, 0L);
+		ProjectedGpx.project(GpxParser.readGpx(gpxFile)).save(gpxFile);
+	}
+
+
+	@TearDown(Level.Trial)
+	public void tearDown() {
+		new File(gpxFile.getPath() + ".gpxbin").delete();
+		gpxFile.delete();
+	}
+
+
+	@Benchmark
+	public Object sax() throws UserException {
+		final GpxContentHandler handler = new GpxContentHandler();
+		GpxParser.parseGpx(gpxFile, handler);
+		return handler;
+	}
+
+
+	@Benchmark
+	public Object stax() throws UserException {
+		return GpxParser.readGpx(gpxFile);
+	}
+
+
+	@Benchmark
+	public Object staxAndProject() throws UserException {
+		return ProjectedGpx.project(GpxParser.readGpx(gpxFile));
+	}
+
+
+	@Benchmark
+	public Object gpxCache() throws IOException {
+		return ProjectedGpx.load(gpxFile);
+	}
+
+}
@@ -0,0 +1,101 @@
+/*
+ *  Copyright 2013 Martin Ždila, Freemap Slovakia
+ *  Licensed under the Apache License, Version 2.0 (the "License");
+ *  you may not use this file except in compliance with the License.
+ *  You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *  Unless required by applicable law or agreed to in writing, software
+ *  distributed under the License is distributed on an "AS IS" BASIS,
+ *  WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *  See the License for the specific language governing permissions and
+ *  limitations under the License.
+ */
+package sk.freemap.gpxAnimator;
+
+import java.io.BufferedWriter;
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.OutputStreamWriter;
+import java.io.Writer;
+import java.text.SimpleDateFormat;
+import java.util.Date;
+import java.util.Locale;
+import java.util.Random;
+import java.util.TimeZone;
+
+/**
+ * Generates GPX files with a random walk track, so that benchmarks need no input data.
+ * Points are one second apart and every thousandth point has a waypoint.
+ */
+public final class SyntheticGpx {
+
+	private static final long START_TIME = 1577836800000L; // 2020-01-01T00:00:00Z
+
+	private static final int WAYPOINT_INTERVAL = 1000;
+
+
+	private SyntheticGpx() {
+	}
+
+
+	public static void main(final String[] args) throws IOException {
+		if (args.length < 2) {
+			System.err.println("usage: SyntheticGpx <output.gpx> <points> [seed]");
+			System.exit(1);
+		}
+		write(new File(args[0]), Integer.parseInt(args[1]), args.length > 2 ? Long.parseLong(args[2]) : 0L);
+	}
+
+
+	/**
+	 * Writes GPX file with single track; tracks with different seeds start at different places of the same area.
+	 */
+	static void write(final File file, final int points, final long seed) throws IOException {
+		final Random random = new Random(seed);
+
+		final double[] lats = new double[points];
+		final double[] lons = new double[points];
+		double lat = 48.0 + random.nextDouble() * 0.2;
+		double lon = 17.0 + random.nextDouble() * 0.3;
+		double heading = random.nextDouble() * 2.0 * Math.PI;
+		for (int i = 0; i < points; i++) {
+			lats[i] = lat;
+			lons[i] = lon;
+			heading += random.nextGaussian() * 0.2;
+			lat += Math.cos(heading) * 0.00004;
+			lon += Math.sin(heading) * 0.00006;
+		}
+
+		final SimpleDateFormat dateFormat = new SimpleDateFormat("yyyy-MM-dd'T'HH:mm:ss'Z'", Locale.ROOT);
+		dateFormat.setTimeZone(TimeZone.getTimeZone("UTC"));
+
+		final Writer w = new BufferedWriter(new OutputStreamWriter(new FileOutputStream(file), "UTF-8"), 65536);
+		try {
+			w.write("<?xml version=\"1.0\" encoding=\"UTF-8\"?>\n");
+			w.write("<gpx version=\"1.1\" creator=\"GPX Animator benchmarks\" xmlns=\"http://www.topografix.com/GPX/1/1\">\n");
+
+			for (int i = WAYPOINT_INTERVAL; i < points; i += WAYPOINT_INTERVAL) {
+				w.write("<wpt lat=\"" + format(lats[i]) + "\" lon=\"" + format(lons[i]) + "\"><time>"
+						+ dateFormat.format(new Date(START_TIME + i * 1000L)) + "</time><name>WP" + i / WAYPOINT_INTERVAL + "</name></wpt>\n");
+			}
+
+			w.write("<trk><name>synthetic " + seed + "</name><trkseg>\n");
+			for (int i = 0; i < points; i++) {
+				w.write("<trkpt lat=\"" + format(lats[i]) + "\" lon=\"" + format(lons[i]) + "\"><ele>" + (150 + i % 100)
+						+ "</ele><time>" + dateFormat.format(new Date(START_TIME + i * 1000L)) + "</time></trkpt>\n");
+			}
+			w.write("</trkseg></trk>\n</gpx>\n");
+		} finally {
+			w.close();
+		}
+	}
+
+
+	private static String format(final double degrees) {
+		return String.format(Locale.ROOT, "%.7f", degrees);
+	}
+
+}
@@ -0,0 +1,508 @@
+/*
+ *  Copyright 2013 Martin Ždila, Freemap Slovakia
+ *  Licensed under the Apache License, Version 2.0 (the "License");
+ *  you may not use this file except in compliance with the License.
+ *  You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *  Unless required by applicable law or agreed to in writing, software
+ *  distributed under the License is distributed on an "AS IS" BASIS,
+ *  WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *  See the License for the specific language governing permissions and
+ *  limitations under the License.
+ */
+package sk.freemap.gpxAnimator;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.net.InetAddress;
+import java.net.InetSocketAddress;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Properties;
+import java.util.Set;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
+import java.util.regex.Pattern;
+
+import javax.xml.bind.JAXBContext;
+import javax.xml.bind.JAXBException;
+import javax.xml.bind.Unmarshaller;
+
+import com.sun.net.httpserver.HttpExchange;
+import com.sun.net.httpserver.HttpHandler;
+import com.sun.net.httpserver.HttpServer;
+
+/**
+ * Long-running service rendering configurations saved from GUI (*.ga.xml) found in a batch directory.
+ * Jobs run on a shared pool in one JVM and share map tile caches. Status of every job is written to
+ * a status file next to its configuration; jobs with a finished status are not rendered again until
+ * their status file is deleted. Jobs interrupted by a crash or shutdown are rendered again on start.
+ */
+final class BatchService {
+
+	static final int DEFAULT_JOBS = 2;
+
+	private static final String JOB_SUFFIX = ".ga.xml";
+
+	private static final String STATUS_SUFFIX = ".status";
+
+	private static final String JOBS_PATH = "/jobs";
+
+	// names of jobs which may be queried; no path separators, no leading dot, so no file outside of the batch directory
+	private static final Pattern JOB_NAME_PATTERN = Pattern.compile("[A-Za-z0-9_-][A-Za-z0-9._-]*");
+
+	private static final long POLL_INTERVAL = 1000;
+
+	// progress is written to the status file at most this often
+	private static final long PROGRESS_INTERVAL = 1000;
+
+	private static final long SHUTDOWN_TIMEOUT = 30000;
+
+	enum State {
+		QUEUED, RUNNING, DONE, FAILED
+	}
+
+	private final File dir;
+
+	private final Integer port;
+
+	private final int jobs;
+
+	private final JAXBContext jaxbContext;
+
+	// names of jobs which are queued or running in this service
+	private final Set<String> activeJobs = new HashSet<String>();
+
+	// canonical directory -> cache shared by all jobs using it
+	private final java.util.Map<File, TileCache> tileCacheMap = new HashMap<File, TileCache>();
+
+	private volatile boolean stopped;
+
+	private int postedJobs;
+
+
+	BatchService(final File dir, final Integer port, final int jobs) throws UserException {
+		if (!dir.isDirectory() && !dir.mkdirs()) {
+			throw new UserException("can't create batch directory " + dir);
+		}
+		if (jobs < 1) {
+			throw new UserException("number of batch jobs must be at least 1");
+		}
+
+		this.dir = dir;
+		this.port = port;
+		this.jobs = jobs;
+
+		try {
+			jaxbContext = JAXBContext.newInstance(Configuration.class);
+		} catch (final JAXBException e) {
+			throw new RuntimeException(e); // should never happen
+		}
+	}
+
+
+	/**
+	 * Renders jobs until the JVM is terminated.
+	 */
+	void run() throws UserException {
+		final ExecutorService executor = Executors.newFixedThreadPool(jobs);
+
+		final HttpServer server = port == null ? null : startServer();
+
+		Runtime.getRuntime().addShutdownHook(new Thread() {
+			@Override
+			public void run() {
+				// running jobs are cancelled and marked as queued so that they are rendered again on next start
+				stopped = true;
+				if (server != null) {
+					server.stop(0);
+				}
+				executor.shutdown();
+				try {
+					executor.awaitTermination(SHUTDOWN_TIMEOUT, TimeUnit.MILLISECONDS);
+				} catch (final InterruptedException e) {
+					Thread.currentThread().interrupt();
+				}
+			}
+		});
+
+		System.out.println("Rendering jobs from " + dir + (server == null ? "" : ", accepting jobs on port " + port));
+
+		while (!stopped) {
+			for (final String name : findNewJobs()) {
+				final Job job = new Job(name);
+				job.writeStatus(State.QUEUED, null);
+				executor.execute(job);
+			}
+
+			try {
+				Thread.sleep(POLL_INTERVAL);
+			} catch (final InterruptedException e) {
+				Thread.currentThread().interrupt();
+				return;
+			}
+		}
+	}
+
+
+	/**
+	 * @return names of jobs without status file or with status of a job interrupted in another run; found jobs become active
+	 */
+	private List<String> findNewJobs() {
+		final List<String> result = new ArrayList<String>();
+
+		final String[] fileNames = dir.list();
+		if (fileNames == null) {
+			return result;
+		}
+		Arrays.sort(fileNames);
+
+		for (final String fileName : fileNames) {
+			if (!fileName.endsWith(JOB_SUFFIX)) {
+				continue;
+			}
+
+			final String name = fileName.substring(0, fileName.length() - JOB_SUFFIX.length());
+			synchronized (activeJobs) {
+				if (activeJobs.contains(name)) {
+					continue;
+				}
+			}
+
+			final File statusFile = getStatusFile(name);
+			if (statusFile.exists()) {
+				final State state = readState(statusFile);
+				if (state != State.QUEUED && state != State.RUNNING) {
+					continue;
+				}
+			}
+
+			synchronized (activeJobs) {
+				activeJobs.add(name);
+			}
+			result.add(name);
+		}
+
+		return result;
+	}
+
+
+	private static State readState(final File statusFile) {
+		final Properties properties = new Properties();
+		try {
+			final InputStream is = new FileInputStream(statusFile);
+			try {
+				properties.load(is);
+			} finally {
+				is.close();
+			}
+		} catch (final IOException e) {
+			return null; // treat unreadable status as finished so that the job is not rendered repeatedly
+		}
+
+		for (final State state : State.values()) {
+			if (state.name().equals(properties.getProperty("state"))) {
+				return state;
+			}
+		}
+		return null;
+	}
+
+
+	private File getStatusFile(final String name) {
+		return new File(dir, name + STATUS_SUFFIX);
+	}
+
+
+	private TileCache getTileCache(final Configuration cfg) throws UserException {
+		if (cfg.getTileCacheDir() == null) {
+			return null;
+		}
+
+		File cacheDir;
+		try {
+			cacheDir = cfg.getTileCacheDir().getCanonicalFile();
+		} catch (final IOException e) {
+			cacheDir = cfg.getTileCacheDir().getAbsoluteFile();
+		}
+
+		// size and expiration of the first job using the directory apply to all jobs
+		synchronized (tileCacheMap) {
+			TileCache tileCache = tileCacheMap.get(cacheDir);
+			if (tileCache == null) {
+				tileCache = new TileCache(cacheDir, cfg.getTileCacheSize() * 1024 * 1024, cfg.getTileCacheTtl());
+				tileCacheMap.put(cacheDir, tileCache);
+			}
+			return tileCache;
+		}
+	}
+
+
+	private HttpServer startServer() throws UserException {
+		final HttpServer server;
+		try {
+			server = HttpServer.create(new InetSocketAddress(InetAddress.getByName(null), port), 0);
+		} catch (final IOException e) {
+			throw new UserException("can't listen on port " + port, e);
+		}
+
+		server.createContext(JOBS_PATH, new HttpHandler() {
+			@Override
+			public void handle(final HttpExchange exchange) throws IOException {
+				try {
+					final String path = exchange.getRequestURI().getPath();
+					if ("POST".equals(exchange.getRequestMethod()) && (path.equals(JOBS_PATH) || path.equals(JOBS_PATH + "/"))) {
+						postJob(exchange);
+					} else if ("GET".equals(exchange.getRequestMethod()) && path.startsWith(JOBS_PATH + "/")) {
+						getJobStatus(exchange, path.substring(JOBS_PATH.length() + 1));
+					} else {
+						respond(exchange, 404, "not found");
+					}
+				} finally {
+					exchange.close();
+				}
+			}
+		});
+
+		server.start();
+		return server;
+	}
+
+
+	/**
+	 * Stores posted configuration to the batch directory where it is found as any other job.
+	 * Relative paths in the configuration are resolved against the batch directory.
+	 */
+	private void postJob(final HttpExchange exchange) throws IOException {
+		final byte[] data = readFully(exchange.getRequestBody());
+
+		try {
+			final Unmarshaller unmarshaller = jaxbContext.createUnmarshaller();
+			unmarshaller.setAdapter(new FileXmlAdapter(dir));
+			unmarshaller.unmarshal(new ByteArrayInputStream(data));
+		} catch (final JAXBException e) {
+			respond(exchange, 400, "invalid configuration: " + e);
+			return;
+		}
+
+		final String name;
+		synchronized (this) {
+			name = "job-" + System.currentTimeMillis() + "-" + ++postedJobs;
+		}
+
+		// renamed when complete so that the job is not found half written
+		final File tmpFile = File.createTempFile("job", ".tmp", dir);
+		try {
+			final OutputStream os = new FileOutputStream(tmpFile);
+			try {
+				os.write(data);
+			} finally {
+				os.close();
+			}
+
+			if (!tmpFile.renameTo(new File(dir, name + JOB_SUFFIX))) {
+				respond(exchange, 500, "can't store job " + name);
+				return;
+			}
+		} finally {
+			tmpFile.delete();
+		}
+
+		exchange.getResponseHeaders().set("Location", JOBS_PATH + "/" + name);
+		respond(exchange, 201, name);
+	}
+
+
+	private void getJobStatus(final HttpExchange exchange, final String name) throws IOException {
+		if (!JOB_NAME_PATTERN.matcher(name).matches()) {
+			respond(exchange, 404, "unknown job");
+			return;
+		}
+
+		final File statusFile = getStatusFile(name);
+		if (!statusFile.isFile()) {
+			respond(exchange, 404, "unknown job " + name);
+			return;
+		}
+
+		final InputStream is = new FileInputStream(statusFile);
+		final byte[] data;
+		try {
+			data = readFully(is);
+		} finally {
+			is.close();
+		}
+
+		exchange.getResponseHeaders().set("Content-Type", "text/plain; charset=ISO-8859-1");
+		exchange.sendResponseHeaders(200, data.length);
+		exchange.getResponseBody().write(data);
+	}
+
+
+	private static void respond(final HttpExchange exchange, final int code, final String message) throws IOException {
+		final byte[] data = (message + "\n").getBytes("UTF-8");
+		exchange.getResponseHeaders().set("Content-Type", "text/plain; charset=UTF-8");
+		exchange.sendResponseHeaders(code, data.length);
+		exchange.getResponseBody().write(data);
+	}
+
+
+	private static byte[] readFully(final InputStream is) throws IOException {
+		final ByteArrayOutputStream baos = new ByteArrayOutputStream();
+		final byte[] buffer = new byte[8192];
+		int n;
+		while ((n = is.read(buffer)) != -1) {
+			baos.write(buffer, 0, n);
+		}
+		return baos.toByteArray();
+	}
+
+
+	private final class Job implements Runnable, RenderingContext {
+		private final String name;
+
+		private final long submitted = System.currentTimeMillis();
+
+		private long started;
+
+		private int progress;
+
+		private String message;
+
+		private long lastProgressWrite;
+
+
+		Job(final String name) {
+			this.name = name;
+		}
+
+
+		@Override
+		public void run() {
+			try {
+				if (stopped) {
+					return;
+				}
+
+				started = System.currentTimeMillis();
+				writeStatus(State.RUNNING, null);
+				System.out.println("Job " + name + " started");
+
+				final File file = new File(dir, name + JOB_SUFFIX);
+				final Configuration cfg;
+				try {
+					final Unmarshaller unmarshaller = jaxbContext.createUnmarshaller();
+					unmarshaller.setAdapter(new FileXmlAdapter(file.getParentFile()));
+					cfg = (Configuration) unmarshaller.unmarshal(file);
+				} catch (final JAXBException e) {
+					throw new UserException("can't read configuration " + file + ": " + e, e);
+				}
+
+				new Renderer(cfg) {
+					@Override
+					TileCache createTileCache() throws UserException {
+						return getTileCache(cfg);
+					}
+				}.render(this);
+
+				if (stopped) {
+					// rendered again on next start
+					writeStatus(State.QUEUED, "interrupted by shutdown");
+				} else {
+					writeStatus(State.DONE, null);
+					System.out.println("Job " + name + " done");
+				}
+			} catch (final UserException e) {
+				writeStatus(State.FAILED, e.getMessage());
+				System.err.println("Job " + name + " failed: " + e.getMessage());
+			} catch (final RuntimeException e) {
+				writeStatus(State.FAILED, e.toString());
+				System.err.println("Job " + name + " failed:");
+				e.printStackTrace();
+			} finally {
+				synchronized (activeJobs) {
+					activeJobs.remove(name);
+				}
+			}
+		}
+
+
+		@Override
+		public void setProgress1(final int pct, final String message) {
+			final long now = System.currentTimeMillis();
+			synchronized (this) {
+				progress = pct;
+				this.message = message;
+				if (now - lastProgressWrite < PROGRESS_INTERVAL) {
+					return;
+				}
+				lastProgressWrite = now;
+			}
+			writeStatus(State.RUNNING, null);
+		}
+
+
+		@Override
+		public boolean isCancelled1() {
+			return stopped;
+		}
+
+
+		synchronized void writeStatus(final State state, final String error) {
+			final Properties properties = new Properties();
+			properties.setProperty("state", state.name());
+			properties.setProperty("submitted", Long.toString(submitted));
+			if (started != 0) {
+				properties.setProperty("started", Long.toString(started));
+			}
+			if (state == State.DONE || state == State.FAILED) {
+				properties.setProperty("finished", Long.toString(System.currentTimeMillis()));
+			}
+			if (state == State.RUNNING) {
+				properties.setProperty("progress", Integer.toString(progress));
+				if (message != null) {
+					properties.setProperty("message", message);
+				}
+			}
+			if (error != null) {
+				properties.setProperty("error", error);
+			}
+
+			final File statusFile = getStatusFile(name);
+			try {
+				// readers never see partially written status
+				final File tmpFile = File.createTempFile("status", ".tmp", dir);
+				try {
+					final OutputStream os = new FileOutputStream(tmpFile);
+					try {
+						properties.store(os, "GPX Animator job " + name);
+					} finally {
+						os.close();
+					}
+
+					statusFile.delete();
+					if (!tmpFile.renameTo(statusFile)) {
+						throw new IOException("can't rename " + tmpFile + " to " + statusFile);
+					}
+				} finally {
+					tmpFile.delete();
+				}
+			} catch (final IOException e) {
+				System.err.println("Can't write status of job " + name + ": " + e.getMessage());
+			}
+		}
+	}
+
+}
@@ -0,0 +1,181 @@
+/*
+ *  Copyright 2013 Martin Ždila, Freemap Slovakia
+ *  Licensed under the Apache License, Version 2.0 (the "License");
+ *  you may not use this file except in compliance with the License.
+ *  You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *  Unless required by applicable law or agreed to in writing, software
+ *  distributed under the License is distributed on an "AS IS" BASIS,
+ *  WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *  See the License for the specific language governing permissions and
+ *  limitations under the License.
+ */
+package sk.freemap.gpxAnimator;
+
+import java.awt.image.BufferedImage;
+import java.awt.image.DataBufferByte;
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.EOFException;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.UnsupportedEncodingException;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+
+/**
+ * Rendering state after painting some frame: track history raster, frame number and flashback state.
+ * Checkpoints are stored in two files next to the output; the previous checkpoint is kept in case
+ * the last one is newer than the frames written before the rendering was interrupted.
+ */
+final class Checkpoint {
+
+	private static final String SUFFIX = ".checkpoint";
+
+	private static final String OLD_SUFFIX = ".checkpoint.old";
+
+	private static final int MAGIC = 0x47505843; // GPXC
+
+	private static final int VERSION = 2;
+
+	private final int frame;
+
+	private final float skip;
+
+	private final BufferedImage image;
+
+
+	Checkpoint(final int frame, final float skip, final BufferedImage image) {
+		this.frame = frame;
+		this.skip = skip;
+		this.image = image;
+	}
+
+
+	int getFrame() {
+		return frame;
+	}
+
+
+	float getSkip() {
+		return skip;
+	}
+
+
+	/**
+	 * @return track history raster of type {@link BufferedImage#TYPE_3BYTE_BGR}
+	 */
+	BufferedImage getImage() {
+		return image;
+	}
+
+
+	/**
+	 * Loads the newest checkpoint which is before the given frame.
+	 *
+	 * @param output output file or pattern of the rendering
+	 * @param key identification of the animation; checkpoints of other animations are ignored
+	 * @return checkpoint or null if there is no usable one
+	 */
+	static Checkpoint load(final File output, final String key, final int beforeFrame) throws IOException {
+		for (final String suffix : new String[] { SUFFIX, OLD_SUFFIX }) {
+			final Checkpoint checkpoint = load(new File(output.getPath() + suffix), key);
+			if (checkpoint != null && checkpoint.frame < beforeFrame) {
+				return checkpoint;
+			}
+		}
+		return null;
+	}
+
+
+	private static Checkpoint load(final File file, final String key) throws IOException {
+		if (!file.isFile()) {
+			return null;
+		}
+
+		final DataInputStream dis = new DataInputStream(new BufferedInputStream(new FileInputStream(file), 65536));
+		try {
+			if (dis.readInt() != MAGIC || dis.readInt() != VERSION) {
+				return null;
+			}
+
+			final byte[] keyDigest = digest(key);
+			final byte[] storedDigest = new byte[keyDigest.length];
+			dis.readFully(storedDigest);
+			if (!MessageDigest.isEqual(keyDigest, storedDigest)) {
+				return null;
+			}
+
+			final int frame = dis.readInt();
+			final float skip = dis.readFloat();
+			final BufferedImage image = new BufferedImage(dis.readInt(), dis.readInt(), BufferedImage.TYPE_3BYTE_BGR);
+			dis.readFully(((DataBufferByte) image.getRaster().getDataBuffer()).getData());
+			return new Checkpoint(frame, skip, image);
+		} catch (final EOFException e) {
+			return null; // truncated file
+		} finally {
+			dis.close();
+		}
+	}
+
+
+	/**
+	 * Stores the checkpoint; the previous one is kept as the old checkpoint.
+	 */
+	void save(final File output, final String key) throws IOException {
+		final File file = new File(output.getPath() + SUFFIX);
+		final File oldFile = new File(output.getPath() + OLD_SUFFIX);
+		final File tmpFile = new File(file.getPath() + ".tmp");
+
+		final DataOutputStream dos = new DataOutputStream(new BufferedOutputStream(new FileOutputStream(tmpFile), 65536));
+		try {
+			dos.writeInt(MAGIC);
+			dos.writeInt(VERSION);
+			dos.write(digest(key));
+			dos.writeInt(frame);
+			dos.writeFloat(skip);
+			dos.writeInt(image.getWidth());
+			dos.writeInt(image.getHeight());
+			dos.write(((DataBufferByte) image.getRaster().getDataBuffer()).getData());
+		} finally {
+			dos.close();
+		}
+
+		oldFile.delete();
+		if (file.exists() && !file.renameTo(oldFile)) {
+			throw new IOException("can't rename " + file + " to " + oldFile);
+		}
+		if (!tmpFile.renameTo(file)) {
+			tmpFile.delete();
+			throw new IOException("can't rename " + tmpFile + " to " + file);
+		}
+	}
+
+
+	// key of many tracks may be longer than allowed by writeUTF, so only its digest is stored
+	private static byte[] digest(final String key) {
+		try {
+			return MessageDigest.getInstance("SHA-1").digest(key.getBytes("UTF-8"));
+		} catch (final NoSuchAlgorithmException e) {
+			throw new RuntimeException(e); // should never happen
+		} catch (final UnsupportedEncodingException e) {
+			throw new RuntimeException(e); // should never happen
+		}
+	}
+
+
+	/**
+	 * Removes stored checkpoints after the rendering has finished.
+	 */
+	static void delete(final File output) {
+		new File(output.getPath() + SUFFIX).delete();
+		new File(output.getPath() + OLD_SUFFIX).delete();
+	}
+
+}
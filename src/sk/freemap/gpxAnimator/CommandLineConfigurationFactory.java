@@ -37,6 +37,12 @@ public final class CommandLineConfigurationFactory {
 
 	private final boolean gui;
 
+	private File batchDir;
+
+	private Integer batchPort;
+
+	private int batchJobs = BatchService.DEFAULT_JOBS;
+
 	
 	private final Configuration configuration;
 	
@@ -60,12 +66,37 @@ public final class CommandLineConfigurationFactory {
 					case ATTRIBUTION:
 						cfg.attribution(args[++i]);
 						break;
+					case BATCH_DIR:
+						final String s10 = args[++i].trim();
+						batchDir = s10.isEmpty() ? null : new File(s10);
+						break;
+					case BATCH_JOBS:
+						batchJobs = Integer.parseInt(args[++i]);
+						break;
+					case BATCH_PORT:
+						final String s11 = args[++i].trim();
+						batchPort = s11.isEmpty() ? null : Integer.valueOf(s11);
+						break;
 					case BACKGROUND_MAP_VISIBILITY:
 						cfg.backgroundMapVisibility(Float.parseFloat(args[++i]));
 						break;
+					case CHECKPOINT_INTERVAL:
+						cfg.checkpointInterval(Integer.parseInt(args[++i]));
+						break;
 					case COLOR:
 						colorList.add(Color.decode(args[++i]));
 						break;
+					case COMPRESSION_QUALITY:
+						final String s6 = args[++i].trim();
+						cfg.compressionQuality(s6.isEmpty() ? null : Float.valueOf(s6));
+						break;
+					case ENCODER_THREADS:
+						cfg.encoderThreads(Integer.parseInt(args[++i]));
+						break;
+					case END_FRAME:
+						final String s8 = args[++i].trim();
+						cfg.endFrame(s8.isEmpty() ? null : Integer.valueOf(s8));
+						break;
 					case FLASHBACK_COLOR:
 						final long lv = Long.decode(args[++i]).longValue();
 						cfg.flashbackColor(new Color(lv < Integer.MAX_VALUE ? (int) lv : (int) (0xffffffff00000000L | lv), true));
@@ -84,6 +115,12 @@ public final class CommandLineConfigurationFactory {
 					case FPS:
 						cfg.fps(Double.parseDouble(args[++i]));
 						break;
+					case FRAME_QUEUE_SIZE:
+						cfg.frameQueueSize(Integer.parseInt(args[++i]));
+						break;
+					case GPX_CACHE:
+						cfg.gpxCache(true);
+						break;
 					case GUI:
 						if (GraphicsEnvironment.isHeadless()) {
 							throw new UserException("graphics is not supported in this environment");
@@ -127,6 +164,10 @@ public final class CommandLineConfigurationFactory {
 					case MAX_LON:
 						cfg.maxLon(Double.parseDouble(args[++i]));
 						break;
+					case METRICS_FILE:
+						final String s9 = args[++i].trim();
+						cfg.metricsFile(s9.isEmpty() ? null : new File(s9));
+						break;
 					case MIN_LAT:
 						cfg.minLat(Double.parseDouble(args[++i]));
 						break;
@@ -136,12 +177,39 @@ public final class CommandLineConfigurationFactory {
 					case OUTPUT:
 						cfg.output(new File(args[++i]));
 						break;
+					case RESUME:
+						cfg.resume(true);
+						break;
+					case SIMPLIFY_TOLERANCE:
+						cfg.simplifyTolerance(Double.parseDouble(args[++i]));
+						break;
 					case SPEEDUP:
 						cfg.speedup(Double.parseDouble(args[++i]));
 						break;
+					case START_FRAME:
+						final String s7 = args[++i].trim();
+						cfg.startFrame(s7.isEmpty() ? null : Integer.valueOf(s7));
+						break;
 					case TAIL_DURATION:
 						cfg.tailDuration(Long.parseLong(args[++i]));
 						break;
+					case THREADS:
+						cfg.threads(Integer.parseInt(args[++i]));
+						break;
+					case TILE_CACHE_DIR:
+						final String s4 = args[++i].trim();
+						cfg.tileCacheDir(s4.isEmpty() ? null : new File(s4));
+						break;
+					case TILE_CACHE_SIZE:
+						cfg.tileCacheSize(Long.parseLong(args[++i]));
+						break;
+					case TILE_CACHE_TTL:
+						final String s5 = args[++i].trim();
+						cfg.tileCacheTtl(s5.isEmpty() ? null : Long.valueOf(s5));
+						break;
+					case TILE_DOWNLOAD_THREADS:
+						cfg.tileDownloadThreads(Integer.parseInt(args[++i]));
+						break;
 					case TIME_OFFSET:
 						final String s2 = args[++i].trim();
 						timeOffsetList.add(s2.isEmpty() ? null : Long.valueOf(s2));
@@ -190,6 +258,10 @@ public final class CommandLineConfigurationFactory {
 			cfg.addTrackConfiguration(tcb.build());
 		}
 		
+		if (batchPort != null && batchDir == null) {
+			throw new UserException("batch port requires batch directory where posted jobs are stored");
+		}
+
 		gui = args.length == 0 || forceGui;
 		
 		configuration = cfg.build();
@@ -233,5 +305,23 @@ public final class CommandLineConfigurationFactory {
 	public boolean isGui() {
 		return gui;
 	}
+
+
+	/**
+	 * @return directory of batch jobs or null if not running as batch service
+	 */
+	public File getBatchDir() {
+		return batchDir;
+	}
+
+
+	public Integer getBatchPort() {
+		return batchPort;
+	}
+
+
+	public int getBatchJobs() {
+		return batchJobs;
+	}
 	
 }
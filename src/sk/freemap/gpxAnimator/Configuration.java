@@ -44,6 +44,12 @@ public class Configuration {
 	private float backgroundMapVisibility;
 	private String tmsUrlTemplate;
 
+	@XmlJavaTypeAdapter(FileXmlAdapter.class)
+	private File tileCacheDir;
+	private long tileCacheSize;
+	private Long tileCacheTtl;
+	private int tileDownloadThreads;
+
 	private boolean skipIdle;
 	
 	@XmlJavaTypeAdapter(ColorXmlAdapter.class)
@@ -63,25 +69,50 @@ public class Configuration {
 	private Double minLat;
 	private Double maxLat;
 
+	private int threads;
+	private boolean gpxCache;
+	private int frameQueueSize;
+	private int encoderThreads;
+	private Float compressionQuality;
+	private Integer startFrame;
+	private Integer endFrame;
+	private int checkpointInterval;
+	private boolean resume;
+	private double simplifyTolerance;
+
+	@XmlJavaTypeAdapter(FileXmlAdapter.class)
+	private File metricsFile;
+
 	@XmlElementWrapper
 	@XmlElement(name = "trackConfiguration")
 	private List<TrackConfiguration> trackConfigurationList;
 	
 	
-	// for JAXB
+	// for JAXB; options missing in files saved by older versions keep their default values
 	@SuppressWarnings("unused")
 	private Configuration() {
-		
+		final Builder defaults = new Builder();
+		threads = defaults.threads;
+		tileCacheSize = defaults.tileCacheSize;
+		tileDownloadThreads = defaults.tileDownloadThreads;
+		frameQueueSize = defaults.frameQueueSize;
+		encoderThreads = defaults.encoderThreads;
 	}
 	
 	public Configuration(
 			final int margin, final Integer width, final Integer height, final Integer zoom,
 			final Double speedup, final long tailDuration, final double fps, final Long totalTime,
 			final float backgroundMapVisibility, final String tmsUrlTemplate,
+			final File tileCacheDir, final long tileCacheSize, final Long tileCacheTtl, final int tileDownloadThreads,
 			final boolean skipIdle, final Color flashbackColor, final Long flashbackDuration,
 			final File output, final String attribution,
 			final int fontSize, final Double markerSize, final Double waypointSize,
 			final Double minLon, final Double maxLon, final Double minLat, final Double maxLat,
+			final int threads, final boolean gpxCache, final int frameQueueSize,
+			final int encoderThreads, final Float compressionQuality,
+			final Integer startFrame, final Integer endFrame,
+			final int checkpointInterval, final boolean resume,
+			final double simplifyTolerance, final File metricsFile,
 			final List<TrackConfiguration> trackConfigurationList) {
 		
 		this.margin = margin;
@@ -94,6 +125,10 @@ public class Configuration {
 		this.totalTime = totalTime;
 		this.backgroundMapVisibility = backgroundMapVisibility;
 		this.tmsUrlTemplate = tmsUrlTemplate;
+		this.tileCacheDir = tileCacheDir;
+		this.tileCacheSize = tileCacheSize;
+		this.tileCacheTtl = tileCacheTtl;
+		this.tileDownloadThreads = tileDownloadThreads;
 		this.skipIdle = skipIdle;
 		this.flashbackColor = flashbackColor;
 		this.flashbackDuration = flashbackDuration;
@@ -107,6 +142,17 @@ public class Configuration {
 		this.maxLon = maxLon;
 		this.minLat = minLat;
 		this.maxLat = maxLat;
+		this.threads = threads;
+		this.gpxCache = gpxCache;
+		this.frameQueueSize = frameQueueSize;
+		this.encoderThreads = encoderThreads;
+		this.compressionQuality = compressionQuality;
+		this.startFrame = startFrame;
+		this.endFrame = endFrame;
+		this.checkpointInterval = checkpointInterval;
+		this.resume = resume;
+		this.simplifyTolerance = simplifyTolerance;
+		this.metricsFile = metricsFile;
 	}
 
 
@@ -160,6 +206,26 @@ public class Configuration {
 	}
 	
 	
+	public File getTileCacheDir() {
+		return tileCacheDir;
+	}
+	
+	
+	public long getTileCacheSize() {
+		return tileCacheSize;
+	}
+	
+	
+	public Long getTileCacheTtl() {
+		return tileCacheTtl;
+	}
+	
+	
+	public int getTileDownloadThreads() {
+		return tileDownloadThreads;
+	}
+	
+	
 	public boolean isSkipIdle() {
 		return skipIdle;
 	}
@@ -218,6 +284,61 @@ public class Configuration {
 		return maxLat;
 	}
 
+
+	public int getThreads() {
+		return threads;
+	}
+
+
+	public boolean isGpxCache() {
+		return gpxCache;
+	}
+
+
+	public int getFrameQueueSize() {
+		return frameQueueSize;
+	}
+
+
+	public int getEncoderThreads() {
+		return encoderThreads;
+	}
+
+
+	public Float getCompressionQuality() {
+		return compressionQuality;
+	}
+
+
+	public Integer getStartFrame() {
+		return startFrame;
+	}
+
+
+	public Integer getEndFrame() {
+		return endFrame;
+	}
+
+
+	public int getCheckpointInterval() {
+		return checkpointInterval;
+	}
+
+
+	public boolean isResume() {
+		return resume;
+	}
+
+
+	public double getSimplifyTolerance() {
+		return simplifyTolerance;
+	}
+
+
+	public File getMetricsFile() {
+		return metricsFile;
+	}
+
 	
 	public List<TrackConfiguration> getTrackConfigurationList() {
 		return trackConfigurationList;
@@ -243,6 +364,11 @@ public class Configuration {
 		private float backgroundMapVisibility = 0.5f;
 		private String tmsUrlTemplate;
 
+		private File tileCacheDir;
+		private long tileCacheSize = 256;
+		private Long tileCacheTtl;
+		private int tileDownloadThreads = 4;
+
 		private boolean skipIdle = true;
 		private Color flashbackColor = Color.white;
 		private Long flashbackDuration = 250l;
@@ -259,6 +385,18 @@ public class Configuration {
 		private Double minLat;
 		private Double maxLat;
 
+		private int threads = 1;
+		private boolean gpxCache;
+		private int frameQueueSize = 4;
+		private int encoderThreads = 1;
+		private Float compressionQuality;
+		private Integer startFrame;
+		private Integer endFrame;
+		private int checkpointInterval;
+		private boolean resume;
+		private double simplifyTolerance;
+		private File metricsFile;
+
 		private final List<TrackConfiguration> trackConfigurationList = new ArrayList<TrackConfiguration>();
 		
 
@@ -267,10 +405,16 @@ public class Configuration {
 					margin, width, height, zoom,
 					speedup, tailDuration, fps, totalTime,
 					backgroundMapVisibility, tmsUrlTemplate,
+					tileCacheDir, tileCacheSize, tileCacheTtl, tileDownloadThreads,
 					skipIdle, flashbackColor, flashbackDuration,
 					output, attribution,
 					fontSize, markerSize, waypointSize,
 					minLon,	maxLon,	minLat,	maxLat,
+					threads, gpxCache, frameQueueSize,
+					encoderThreads, compressionQuality,
+					startFrame, endFrame,
+					checkpointInterval, resume,
+					simplifyTolerance, metricsFile,
 
 					Collections.unmodifiableList(trackConfigurationList)
 			);
@@ -327,6 +471,26 @@ public class Configuration {
 			return this;
 		}
 
+		public Builder tileCacheDir(final File tileCacheDir) {
+			this.tileCacheDir = tileCacheDir;
+			return this;
+		}
+
+		public Builder tileCacheSize(final long tileCacheSize) {
+			this.tileCacheSize = tileCacheSize;
+			return this;
+		}
+
+		public Builder tileCacheTtl(final Long tileCacheTtl) {
+			this.tileCacheTtl = tileCacheTtl;
+			return this;
+		}
+
+		public Builder tileDownloadThreads(final int tileDownloadThreads) {
+			this.tileDownloadThreads = tileDownloadThreads;
+			return this;
+		}
+
 		public Builder skipIdle(final boolean skipIdle) {
 			this.skipIdle = skipIdle;
 			return this;
@@ -387,6 +551,61 @@ public class Configuration {
 			return this;
 		}
 
+		public Builder threads(final int threads) {
+			this.threads = threads;
+			return this;
+		}
+
+		public Builder gpxCache(final boolean gpxCache) {
+			this.gpxCache = gpxCache;
+			return this;
+		}
+
+		public Builder frameQueueSize(final int frameQueueSize) {
+			this.frameQueueSize = frameQueueSize;
+			return this;
+		}
+
+		public Builder encoderThreads(final int encoderThreads) {
+			this.encoderThreads = encoderThreads;
+			return this;
+		}
+
+		public Builder compressionQuality(final Float compressionQuality) {
+			this.compressionQuality = compressionQuality;
+			return this;
+		}
+
+		public Builder startFrame(final Integer startFrame) {
+			this.startFrame = startFrame;
+			return this;
+		}
+
+		public Builder endFrame(final Integer endFrame) {
+			this.endFrame = endFrame;
+			return this;
+		}
+
+		public Builder checkpointInterval(final int checkpointInterval) {
+			this.checkpointInterval = checkpointInterval;
+			return this;
+		}
+
+		public Builder resume(final boolean resume) {
+			this.resume = resume;
+			return this;
+		}
+
+		public Builder simplifyTolerance(final double simplifyTolerance) {
+			this.simplifyTolerance = simplifyTolerance;
+			return this;
+		}
+
+		public Builder metricsFile(final File metricsFile) {
+			this.metricsFile = metricsFile;
+			return this;
+		}
+
 		public Builder addTrackConfiguration(final TrackConfiguration trackConfiguration) {
 			this.trackConfigurationList.add(trackConfiguration);
 			return this;
@@ -405,6 +624,10 @@ public class Configuration {
 				+ ", fps=" + fps + ", totalTime=" + totalTime
 				+ ", backgroundMapVisibility=" + backgroundMapVisibility
 				+ ", tmsUrlTemplate=" + tmsUrlTemplate
+				+ ", tileCacheDir=" + tileCacheDir
+				+ ", tileCacheSize=" + tileCacheSize
+				+ ", tileCacheTtl=" + tileCacheTtl
+				+ ", tileDownloadThreads=" + tileDownloadThreads
 				+ ", skipIdle=" + skipIdle
 				+ ", flashbackColor=" + flashbackColor
 				+ ", flashbackDuration=" + flashbackDuration
@@ -412,6 +635,17 @@ public class Configuration {
 				+ ", fontSize=" + fontSize
 				+ ", markerSize=" + markerSize
 				+ ", waypointSize=" + waypointSize
+				+ ", threads=" + threads
+				+ ", gpxCache=" + gpxCache
+				+ ", frameQueueSize=" + frameQueueSize
+				+ ", encoderThreads=" + encoderThreads
+				+ ", compressionQuality=" + compressionQuality
+				+ ", startFrame=" + startFrame
+				+ ", endFrame=" + endFrame
+				+ ", checkpointInterval=" + checkpointInterval
+				+ ", resume=" + resume
+				+ ", simplifyTolerance=" + simplifyTolerance
+				+ ", metricsFile=" + metricsFile
 				+ ", trackConfigurationList=" + trackConfigurationList
 				+ "]";
 	}
@@ -0,0 +1,156 @@
+/*
+ *  Copyright 2013 Martin Ždila, Freemap Slovakia
+ *  Licensed under the Apache License, Version 2.0 (the "License");
+ *  you may not use this file except in compliance with the License.
+ *  You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *  Unless required by applicable law or agreed to in writing, software
+ *  distributed under the License is distributed on an "AS IS" BASIS,
+ *  WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *  See the License for the specific language governing permissions and
+ *  limitations under the License.
+ */
+package sk.freemap.gpxAnimator;
+
+import java.util.Arrays;
+
+/**
+ * Sorted disjoint intervals of frames. Frames are addressed either by their number or by their
+ * zero-based ordinal among all frames of the intervals.
+ */
+final class FrameIntervals {
+
+	// inclusive
+	private final int[] froms;
+
+	// exclusive
+	private final int[] tos;
+
+	// number of frames in preceding intervals
+	private final int[] offsets;
+
+	private final int size;
+
+
+	private FrameIntervals(final int[] froms, final int[] tos) {
+		this.froms = froms;
+		this.tos = tos;
+
+		offsets = new int[froms.length];
+		int size = 0;
+		for (int i = 0; i < froms.length; i++) {
+			offsets[i] = size;
+			size += tos[i] - froms[i];
+		}
+		this.size = size;
+	}
+
+
+	/**
+	 * @return number of frames in all intervals
+	 */
+	int size() {
+		return size;
+	}
+
+
+	/**
+	 * @return frame with the given ordinal
+	 */
+	int getFrame(final int ordinal) {
+		// intervals are not empty, so offsets are unique
+		final int index = Arrays.binarySearch(offsets, ordinal);
+		final int i = index >= 0 ? index : -index - 2;
+		return froms[i] + ordinal - offsets[i];
+	}
+
+
+	boolean contains(final int frame) {
+		final int i = indexOf(frame);
+		return i != -1 && frame < tos[i];
+	}
+
+
+	/**
+	 * @return the given frame if it is contained in some interval, otherwise start of the next interval
+	 *         or {@link Integer#MAX_VALUE} if there is none
+	 */
+	int ceiling(final int frame) {
+		final int i = indexOf(frame);
+		if (i != -1 && frame < tos[i]) {
+			return frame;
+		}
+		return i + 1 < froms.length ? froms[i + 1] : Integer.MAX_VALUE;
+	}
+
+
+	// index of the last interval starting at or before the frame, -1 if there is none
+	private int indexOf(final int frame) {
+		final int i = Arrays.binarySearch(froms, frame);
+		return i >= 0 ? i : -i - 2;
+	}
+
+
+	static final class Builder {
+
+		private int[] froms = new int[16];
+
+		private int[] tos = new int[16];
+
+		private int size;
+
+
+		/**
+		 * Adds interval of frames; intervals may overlap and may be added in any order.
+		 *
+		 * @param from first frame
+		 * @param to frame after the last one
+		 */
+		Builder add(final int from, final int to) {
+			if (from >= to) {
+				return this;
+			}
+
+			if (size == froms.length) {
+				froms = Arrays.copyOf(froms, size * 2);
+				tos = Arrays.copyOf(tos, size * 2);
+			}
+
+			froms[size] = from;
+			tos[size] = to;
+			size++;
+
+			return this;
+		}
+
+
+		FrameIntervals build() {
+			final long[] intervals = new long[size];
+			for (int i = 0; i < size; i++) {
+				intervals[i] = (long) froms[i] << 32 | tos[i];
+			}
+			Arrays.sort(intervals);
+
+			final int[] mergedFroms = new int[size];
+			final int[] mergedTos = new int[size];
+			int n = 0;
+			for (final long interval : intervals) {
+				final int from = (int) (interval >>> 32);
+				final int to = (int) interval;
+				if (n > 0 && from <= mergedTos[n - 1]) {
+					mergedTos[n - 1] = Math.max(mergedTos[n - 1], to);
+				} else {
+					mergedFroms[n] = from;
+					mergedTos[n] = to;
+					n++;
+				}
+			}
+
+			return new FrameIntervals(Arrays.copyOf(mergedFroms, n), Arrays.copyOf(mergedTos, n));
+		}
+
+	}
+
+}
@@ -0,0 +1,101 @@
+/*
+ *  Copyright 2013 Martin Ždila, Freemap Slovakia
+ *  Licensed under the Apache License, Version 2.0 (the "License");
+ *  you may not use this file except in compliance with the License.
+ *  You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *  Unless required by applicable law or agreed to in writing, software
+ *  distributed under the License is distributed on an "AS IS" BASIS,
+ *  WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *  See the License for the specific language governing permissions and
+ *  limitations under the License.
+ */
+package sk.freemap.gpxAnimator;
+
+import java.util.HashMap;
+
+import sk.freemap.gpxAnimator.frameWriter.FrameBuffer;
+
+/**
+ * Collects frames rendered out of order by several threads and hands them out in frame order.
+ * Frames too far ahead of the next expected one have to wait, which limits the number of buffered frames.
+ */
+final class FrameReorderBuffer {
+
+	// null value for skipped frame
+	private final java.util.Map<Integer, FrameBuffer> frameMap = new HashMap<Integer, FrameBuffer>();
+
+	private final int capacity;
+
+	private int nextFrame;
+
+	private Throwable failure;
+
+
+	FrameReorderBuffer(final int firstFrame, final int capacity) {
+		this.nextFrame = firstFrame;
+		this.capacity = capacity;
+	}
+
+
+	/**
+	 * Waits until the given frame fits to the buffer; fails when rendering of another frame has failed.
+	 */
+	synchronized void awaitSpace(final int frame) throws InterruptedException {
+		while (frame >= nextFrame + capacity) {
+			checkFailure();
+			wait();
+		}
+		checkFailure();
+	}
+
+
+	/**
+	 * @param buffer rendered frame or null if frame was skipped
+	 */
+	synchronized void put(final int frame, final FrameBuffer buffer) {
+		frameMap.put(frame, buffer);
+		notifyAll();
+	}
+
+
+	/**
+	 * Wakes up all waiting threads; the first failure is reported to them.
+	 */
+	synchronized void fail(final Throwable e) {
+		if (failure == null) {
+			failure = e;
+		}
+		notifyAll();
+	}
+
+
+	/**
+	 * Waits for the given frame, which must be the next one in order.
+	 *
+	 * @return rendered frame or null if frame was skipped
+	 */
+	synchronized FrameBuffer take(final int frame) throws InterruptedException {
+		assert frame == nextFrame;
+
+		while (!frameMap.containsKey(frame)) {
+			checkFailure();
+			wait();
+		}
+
+		nextFrame++;
+		notifyAll();
+
+		return frameMap.remove(frame);
+	}
+
+
+	private void checkFailure() {
+		if (failure != null) {
+			throw new RuntimeException("internal error when rendering frame", failure);
+		}
+	}
+
+}
@@ -32,9 +32,9 @@ final class GpxContentHandler extends DefaultHandler {
 	private static final String ELEM_TIME = "time";
 	private static final String ELEM_NAME = "name";
 	
-	private final List<List<LatLon>> timePointListList = new ArrayList<List<LatLon>>();
-	private List<LatLon> timePointList;
-	private final List<LatLon> waypointList = new ArrayList<LatLon>();
+	private final List<LatLonList> timePointListList = new ArrayList<LatLonList>();
+	private LatLonList timePointList;
+	private final LatLonList waypointList = new LatLonList();
 
 	private StringBuilder sb;
 	private long time = Long.MIN_VALUE;
@@ -46,7 +46,7 @@ final class GpxContentHandler extends DefaultHandler {
 	@Override
 	public void startElement(final String uri, final String localName, final String qName, final Attributes attributes) throws SAXException {
 		if (ELEM_TRKSEG.equals(qName)) {
-			timePointList = new ArrayList<LatLon>();
+			timePointList = new LatLonList();
 		} else if (ELEM_TRKPT.equals(qName) || ELEM_WPT.equals(qName)) {
 			lat = Double.parseDouble(attributes.getValue(ATTR_LAT));
 			lon = Double.parseDouble(attributes.getValue(ATTR_LON));
@@ -70,10 +70,10 @@ final class GpxContentHandler extends DefaultHandler {
 			timePointListList.add(timePointList);
 			timePointList = null;
 		} else if (ELEM_TRKPT.equals(qName)) {
-			timePointList.add(new LatLon(lat, lon, time));
+			timePointList.add(lat, lon, time, null);
 			time = Long.MIN_VALUE;
 		} else if (ELEM_WPT.equals(qName)) {
-			waypointList.add(new Waypoint(lat, lon, time, name));
+			waypointList.add(lat, lon, time, name);
 		} else if (ELEM_TIME.equals(qName)) {
 			time = new DateTime(sb.toString()).getMillis();
 			sb = null;
@@ -84,12 +84,12 @@ final class GpxContentHandler extends DefaultHandler {
 	}
 	
 	
-	public List<List<LatLon>> getPointLists() {
+	public List<LatLonList> getPointLists() {
 		return timePointListList;
 	}
 	
 	
-	public List<LatLon> getWaypointList() {
+	public LatLonList getWaypointList() {
 		return waypointList;
 	}
 	
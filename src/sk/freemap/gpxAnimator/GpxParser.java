@@ -14,6 +14,7 @@
  */
 package sk.freemap.gpxAnimator;
 
+import java.io.BufferedInputStream;
 import java.io.File;
 import java.io.FileInputStream;
 import java.io.IOException;
@@ -24,6 +25,7 @@ import java.util.zip.GZIPInputStream;
 import javax.xml.parsers.ParserConfigurationException;
 import javax.xml.parsers.SAXParser;
 import javax.xml.parsers.SAXParserFactory;
+import javax.xml.stream.XMLStreamException;
 
 import org.xml.sax.SAXException;
 
@@ -60,6 +62,30 @@ class GpxParser {
 		}
 	}
 	
+	static GpxStreamReader readGpx(final File inputGpx) throws UserException {
+		final GpxStreamReader reader = new GpxStreamReader();
+		try {
+			final InputStream is = new FileInputStream(inputGpx);
+			try {
+				final InputStream dis = decompressStream(new BufferedInputStream(is));
+				try {
+					reader.read(dis);
+				} catch (final XMLStreamException e) {
+					throw new UserException("error parsing input GPX file", e);
+				} catch (final RuntimeException e) {
+					throw new RuntimeException("internal error when parsing GPX file", e);
+				} finally {
+					dis.close();
+				}
+			} finally {
+				is.close();
+			}
+		} catch (final IOException e) {
+			throw new UserException("error reading input file", e);
+		}
+		return reader;
+	}
+	
 	public static InputStream decompressStream(final InputStream input) throws IOException {
 		final PushbackInputStream pb = new PushbackInputStream(input, 2);
 		final byte[] signature = new byte[2];
@@ -0,0 +1,250 @@
+/*
+ *  Copyright 2013 Martin Ždila, Freemap Slovakia
+ *  Licensed under the Apache License, Version 2.0 (the "License");
+ *  you may not use this file except in compliance with the License.
+ *  You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *  Unless required by applicable law or agreed to in writing, software
+ *  distributed under the License is distributed on an "AS IS" BASIS,
+ *  WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *  See the License for the specific language governing permissions and
+ *  limitations under the License.
+ */
+package sk.freemap.gpxAnimator;
+
+import java.io.InputStream;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+import javax.xml.stream.XMLInputFactory;
+import javax.xml.stream.XMLStreamConstants;
+import javax.xml.stream.XMLStreamException;
+import javax.xml.stream.XMLStreamReader;
+
+import org.joda.time.DateTime;
+
+/**
+ * StAX based GPX reader. Produces the same result as {@link GpxContentHandler} but reads element text
+ * into a reused buffer and parses the common ISO 8601 time format directly from it.
+ */
+final class GpxStreamReader {
+
+	private static final String ATTR_LON = "lon";
+	private static final String ATTR_LAT = "lat";
+	private static final String ELEM_TRKSEG = "trkseg";
+	private static final String ELEM_TRKPT = "trkpt";
+	private static final String ELEM_WPT = "wpt";
+	private static final String ELEM_TIME = "time";
+	private static final String ELEM_NAME = "name";
+
+	private final List<LatLonList> timePointListList = new ArrayList<LatLonList>();
+	private LatLonList timePointList;
+	private final LatLonList waypointList = new LatLonList();
+
+	private char[] text = new char[64];
+	private int textLength = -1; // -1 if text is not being collected
+	private long time = Long.MIN_VALUE;
+	private double lat;
+	private double lon;
+	private String name;
+
+
+	void read(final InputStream is) throws XMLStreamException {
+		final XMLInputFactory factory = XMLInputFactory.newInstance();
+		factory.setProperty(XMLInputFactory.SUPPORT_DTD, Boolean.FALSE);
+
+		final XMLStreamReader reader = factory.createXMLStreamReader(is);
+		try {
+			while (reader.hasNext()) {
+				switch (reader.next()) {
+				case XMLStreamConstants.START_ELEMENT:
+					startElement(reader);
+					break;
+				case XMLStreamConstants.CHARACTERS:
+				case XMLStreamConstants.CDATA:
+				case XMLStreamConstants.SPACE:
+					if (textLength != -1) {
+						appendText(reader.getTextCharacters(), reader.getTextStart(), reader.getTextLength());
+					}
+					break;
+				case XMLStreamConstants.END_ELEMENT:
+					endElement(reader.getLocalName());
+					break;
+				default:
+					break;
+				}
+			}
+		} finally {
+			reader.close();
+		}
+	}
+
+
+	private void startElement(final XMLStreamReader reader) {
+		final String localName = reader.getLocalName();
+		if (ELEM_TRKSEG.equals(localName)) {
+			timePointList = new LatLonList();
+		} else if (ELEM_TRKPT.equals(localName) || ELEM_WPT.equals(localName)) {
+			lat = Double.parseDouble(reader.getAttributeValue(null, ATTR_LAT));
+			lon = Double.parseDouble(reader.getAttributeValue(null, ATTR_LON));
+		} else if (ELEM_TIME.equals(localName) || ELEM_NAME.equals(localName)) {
+			textLength = 0;
+		}
+	}
+
+
+	private void appendText(final char[] ch, final int start, final int length) {
+		if (textLength + length > text.length) {
+			text = Arrays.copyOf(text, Math.max(text.length * 2, textLength + length));
+		}
+		System.arraycopy(ch, start, text, textLength, length);
+		textLength += length;
+	}
+
+
+	private void endElement(final String localName) {
+		if (ELEM_TRKSEG.equals(localName)) {
+			timePointListList.add(timePointList);
+			timePointList = null;
+		} else if (ELEM_TRKPT.equals(localName)) {
+			timePointList.add(lat, lon, time, null);
+			time = Long.MIN_VALUE;
+		} else if (ELEM_WPT.equals(localName)) {
+			waypointList.add(lat, lon, time, name);
+		} else if (ELEM_TIME.equals(localName)) {
+			time = parseTime(text, 0, textLength);
+			textLength = -1;
+		} else if (ELEM_NAME.equals(localName)) {
+			name = new String(text, 0, textLength);
+			textLength = -1;
+		}
+	}
+
+
+	/**
+	 * Parses ISO 8601 date time. Format yyyy-MM-ddTHH:mm:ss[.SSS](Z|±HH:mm) is parsed directly,
+	 * all others are passed to Joda-Time.
+	 */
+	static long parseTime(final char[] ch, final int start, final int length) {
+		int from = start;
+		int to = start + length;
+		while (from < to && Character.isWhitespace(ch[from])) {
+			from++;
+		}
+		while (to > from && Character.isWhitespace(ch[to - 1])) {
+			to--;
+		}
+
+		final long millis = parseUtcTime(ch, from, to);
+		return millis == Long.MIN_VALUE ? new DateTime(new String(ch, from, to - from)).getMillis() : millis;
+	}
+
+
+	// returns Long.MIN_VALUE if the format is not supported
+	private static long parseUtcTime(final char[] ch, final int from, final int to) {
+		if (to - from < 20 || ch[from + 4] != '-' || ch[from + 7] != '-' || ch[from + 10] != 'T' || ch[from + 13] != ':' || ch[from + 16] != ':') {
+			return Long.MIN_VALUE;
+		}
+
+		final int year = digits(ch, from, 4);
+		final int month = digits(ch, from + 5, 2);
+		final int day = digits(ch, from + 8, 2);
+		final int hour = digits(ch, from + 11, 2);
+		final int minute = digits(ch, from + 14, 2);
+		final int second = digits(ch, from + 17, 2);
+		if (year < 0 || month < 1 || month > 12 || day < 1 || day > 31 || hour < 0 || hour > 23 || minute < 0 || minute > 59 || second < 0 || second > 59) {
+			return Long.MIN_VALUE;
+		}
+
+		int pos = from + 19;
+		int millis = 0;
+		if (ch[pos] == '.' || ch[pos] == ',') {
+			pos++;
+			int digitCount = 0;
+			while (pos < to && ch[pos] >= '0' && ch[pos] <= '9') {
+				if (digitCount < 3) {
+					millis = millis * 10 + ch[pos] - '0';
+				}
+				digitCount++;
+				pos++;
+			}
+			if (digitCount == 0) {
+				return Long.MIN_VALUE;
+			}
+			for (int i = digitCount; i < 3; i++) {
+				millis *= 10;
+			}
+		}
+
+		int offsetMinutes;
+		if (pos == to - 1 && ch[pos] == 'Z') {
+			offsetMinutes = 0;
+		} else if (pos == to - 6 && (ch[pos] == '+' || ch[pos] == '-') && ch[pos + 3] == ':') {
+			final int offsetHour = digits(ch, pos + 1, 2);
+			final int offsetMinute = digits(ch, pos + 4, 2);
+			if (offsetHour < 0 || offsetMinute < 0) {
+				return Long.MIN_VALUE;
+			}
+			offsetMinutes = offsetHour * 60 + offsetMinute;
+			if (ch[pos] == '-') {
+				offsetMinutes = -offsetMinutes;
+			}
+		} else {
+			return Long.MIN_VALUE;
+		}
+
+		if (day > daysInMonth(year, month)) {
+			return Long.MIN_VALUE;
+		}
+
+		final long days = daysFromCivil(year, month, day);
+		return (((days * 24 + hour) * 60 + minute - offsetMinutes) * 60 + second) * 1000 + millis;
+	}
+
+
+	// returns -1 if there are non-digit characters
+	private static int digits(final char[] ch, final int from, final int count) {
+		int value = 0;
+		for (int i = from; i < from + count; i++) {
+			final char c = ch[i];
+			if (c < '0' || c > '9') {
+				return -1;
+			}
+			value = value * 10 + c - '0';
+		}
+		return value;
+	}
+
+
+	private static int daysInMonth(final int year, final int month) {
+		if (month == 2) {
+			return year % 4 == 0 && (year % 100 != 0 || year % 400 == 0) ? 29 : 28;
+		}
+		return month == 4 || month == 6 || month == 9 || month == 11 ? 30 : 31;
+	}
+
+
+	// days since 1970-01-01 in proleptic Gregorian calendar
+	private static long daysFromCivil(final int year, final int month, final int day) {
+		final int y = month <= 2 ? year - 1 : year;
+		final int era = (y >= 0 ? y : y - 399) / 400;
+		final int yoe = y - era * 400;
+		final int doy = (153 * (month + (month > 2 ? -3 : 9)) + 2) / 5 + day - 1;
+		final int doe = yoe * 365 + yoe / 4 - yoe / 100 + doy;
+		return era * 146097L + doe - 719468;
+	}
+
+
+	public List<LatLonList> getPointLists() {
+		return timePointListList;
+	}
+
+
+	public LatLonList getWaypointList() {
+		return waypointList;
+	}
+
+}
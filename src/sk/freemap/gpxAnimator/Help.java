@@ -49,6 +49,10 @@ public class Help {
 		w.writeOptionHelp(Option.HEIGHT, "height", false, cfg.getHeight());
 		w.writeOptionHelp(Option.ZOOM, "zoom", false, cfg.getZoom());
 		w.writeOptionHelp(Option.TMS_URL_TEMPLATE, "template", false, cfg.getTmsUrlTemplate());
+		w.writeOptionHelp(Option.TILE_CACHE_DIR, "directory", false, cfg.getTileCacheDir());
+		w.writeOptionHelp(Option.TILE_CACHE_SIZE, "megabytes", false, cfg.getTileCacheSize());
+		w.writeOptionHelp(Option.TILE_CACHE_TTL, "milliseconds", false, cfg.getTileCacheTtl());
+		w.writeOptionHelp(Option.TILE_DOWNLOAD_THREADS, "threads", false, cfg.getTileDownloadThreads());
 		w.writeOptionHelp(Option.ATTRIBUTION, "text", false, cfg.getAttribution());
 		w.writeOptionHelp(Option.BACKGROUND_MAP_VISIBILITY, "visibility", false, cfg.getBackgroundMapVisibility());
 		w.writeOptionHelp(Option.FONT_SIZE, "size", false, cfg.getFontSize());
@@ -59,6 +63,20 @@ public class Help {
 		w.writeOptionHelp(Option.MAX_LAT, "latitude", false, cfg.getMaxLat());
 		w.writeOptionHelp(Option.MIN_LON, "longitude", false, cfg.getMinLon());
 		w.writeOptionHelp(Option.MAX_LON, "longitude", false, cfg.getMaxLon());
+		w.writeOptionHelp(Option.THREADS, "threads", false, cfg.getThreads());
+		w.writeOptionHelp(Option.GPX_CACHE, null, false, cfg.isGpxCache());
+		w.writeOptionHelp(Option.FRAME_QUEUE_SIZE, "frames", false, cfg.getFrameQueueSize());
+		w.writeOptionHelp(Option.ENCODER_THREADS, "threads", false, cfg.getEncoderThreads());
+		w.writeOptionHelp(Option.COMPRESSION_QUALITY, "quality", false, cfg.getCompressionQuality());
+		w.writeOptionHelp(Option.START_FRAME, "frame", false, cfg.getStartFrame());
+		w.writeOptionHelp(Option.END_FRAME, "frame", false, cfg.getEndFrame());
+		w.writeOptionHelp(Option.CHECKPOINT_INTERVAL, "frames", false, cfg.getCheckpointInterval());
+		w.writeOptionHelp(Option.RESUME, null, false, cfg.isResume());
+		w.writeOptionHelp(Option.SIMPLIFY_TOLERANCE, "pixels", false, cfg.getSimplifyTolerance());
+		w.writeOptionHelp(Option.METRICS_FILE, "file", false, cfg.getMetricsFile());
+		w.writeOptionHelp(Option.BATCH_DIR, "directory", false, null);
+		w.writeOptionHelp(Option.BATCH_PORT, "port", false, null);
+		w.writeOptionHelp(Option.BATCH_JOBS, "jobs", false, BatchService.DEFAULT_JOBS);
 	}
 	
 	public interface OptionHelpWriter {
@@ -0,0 +1,91 @@
+/*
+ *  Copyright 2013 Martin Ždila, Freemap Slovakia
+ *  Licensed under the Apache License, Version 2.0 (the "License");
+ *  you may not use this file except in compliance with the License.
+ *  You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *  Unless required by applicable law or agreed to in writing, software
+ *  distributed under the License is distributed on an "AS IS" BASIS,
+ *  WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *  See the License for the specific language governing permissions and
+ *  limitations under the License.
+ */
+package sk.freemap.gpxAnimator;
+
+import java.util.Arrays;
+
+/**
+ * Growable list of points read from GPX, stored in primitive columns.
+ * Time is {@link Long#MIN_VALUE} for points without time.
+ */
+final class LatLonList {
+
+	private double[] lats = new double[16];
+
+	private double[] lons = new double[16];
+
+	private long[] times = new long[16];
+
+	// null if no point has a name
+	private String[] names;
+
+	private int size;
+
+
+	void add(final double lat, final double lon, final long time, final String name) {
+		if (size == times.length) {
+			final int capacity = size * 2;
+			lats = Arrays.copyOf(lats, capacity);
+			lons = Arrays.copyOf(lons, capacity);
+			times = Arrays.copyOf(times, capacity);
+			if (names != null) {
+				names = Arrays.copyOf(names, capacity);
+			}
+		}
+
+		if (name != null && names == null) {
+			names = new String[times.length];
+		}
+
+		lats[size] = lat;
+		lons[size] = lon;
+		times[size] = time;
+		if (names != null) {
+			names[size] = name;
+		}
+		size++;
+	}
+
+
+	int size() {
+		return size;
+	}
+
+
+	boolean hasNames() {
+		return names != null;
+	}
+
+
+	double getLat(final int index) {
+		return lats[index];
+	}
+
+
+	double getLon(final int index) {
+		return lons[index];
+	}
+
+
+	long getTime(final int index) {
+		return times[index];
+	}
+
+
+	String getName(final int index) {
+		return names == null ? null : names[index];
+	}
+
+}
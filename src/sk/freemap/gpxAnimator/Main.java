@@ -17,6 +17,7 @@ package sk.freemap.gpxAnimator;
 import java.awt.EventQueue;
 import java.awt.GraphicsEnvironment;
 
+import sk.freemap.gpxAnimator.frameWriter.RawFrameWriter;
 import sk.freemap.gpxAnimator.ui.MainFrame;
 
 
@@ -27,7 +28,9 @@ public class Main {
 			final CommandLineConfigurationFactory cf = new CommandLineConfigurationFactory(args);
 			final Configuration configuration = cf.getConfiguration();
 			
-			if (cf.isGui() && !GraphicsEnvironment.isHeadless()) {
+			if (cf.getBatchDir() != null) {
+				new BatchService(cf.getBatchDir(), cf.getBatchPort(), cf.getBatchJobs()).run();
+			} else if (cf.isGui() && !GraphicsEnvironment.isHeadless()) {
 				EventQueue.invokeLater(new Runnable() {
 					@Override
 					public void run() {
@@ -41,6 +44,11 @@ public class Main {
 					}
 				});
 			} else {
+				if (RawFrameWriter.STANDARD_OUTPUT.equals(configuration.getOutput().getPath())) {
+					// standard output is reserved for frames
+					System.setOut(System.err);
+				}
+
 				new Renderer(configuration).render(new RenderingContext() {
 					@Override
 					public void setProgress1(final int pct, final String message) {
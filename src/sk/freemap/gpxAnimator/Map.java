@@ -17,8 +17,24 @@ package sk.freemap.gpxAnimator;
 import java.awt.Graphics2D;
 import java.awt.image.BufferedImage;
 import java.awt.image.RescaleOp;
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
 import java.io.IOException;
+import java.io.InputStream;
+import java.net.MalformedURLException;
 import java.net.URL;
+import java.net.URLConnection;
+import java.util.HashMap;
+import java.util.concurrent.Callable;
+import java.util.concurrent.CompletionService;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorCompletionService;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.TimeUnit;
 import java.util.regex.Matcher;
 import java.util.regex.Pattern;
 
@@ -28,9 +44,24 @@ public class Map {
 
 	private static final Pattern SWITCH_PATTERN = Pattern.compile("\\{switch:([^}]*)\\}");
 
+	private static final int MAX_CONNECTIONS_PER_HOST = 2;
+
+	private static final int MAX_ATTEMPTS = 4;
+
+	private static final long RETRY_DELAY = 500; // doubled with every attempt
+
+	private static final int CONNECT_TIMEOUT = 10000;
+
+	private static final int READ_TIMEOUT = 30000;
+
 	
-	public static void drawMap(final BufferedImage bi, final String tmsUrlTemplate, final float backgroundMapVisibility, final int zoom,
-			final double minX, final double maxX, final double minY, final double maxY, final RenderingContext rc) throws UserException {
+	/**
+	 * @return time spent composing tiles to the image in nanoseconds; the rest is spent fetching tiles;
+	 *         -1 if drawing was cancelled or interrupted and the map is incomplete
+	 */
+	public static long drawMap(final BufferedImage bi, final String tmsUrlTemplate, final float backgroundMapVisibility, final int zoom,
+			final double minX, final double maxX, final double minY, final double maxY, final TileCache tileCache, final int downloadThreads,
+			final ThreadFactory threadFactory, final RenderingContext rc) throws UserException {
 		final Graphics2D ga = (Graphics2D) bi.getGraphics();
 
 		final double tileDblX = xToTileX(zoom, minX);
@@ -46,51 +77,206 @@ public class Map {
 		
 		final int total = (maxXtile - tileX + 1) * (tileY - maxYtile + 1);
 		int  i = 0;
+		long composeTime = 0;
 		
 		final Matcher m = SWITCH_PATTERN.matcher(tmsUrlTemplate); // note that only one switch in pattern is supported
 		final String[] options = m.find() ? m.group(1).split(",") : null;
 		
-		for (int x = tileX; x <= maxXtile; x++) {
-			for (int y = tileY; y >= maxYtile; y--) {
-				if (rc.isCancelled1()) {
-					return;
+		final RescaleOp rescaleOp = new RescaleOp(backgroundMapVisibility, (1f - backgroundMapVisibility) * 255f, null);
+		final java.util.Map<String, Semaphore> hostSemaphoreMap = new HashMap<String, Semaphore>();
+		
+		final ExecutorService executor = Executors.newFixedThreadPool(Math.max(1, downloadThreads), threadFactory);
+		try {
+			final CompletionService<Tile> completionService = new ExecutorCompletionService<Tile>(executor);
+			
+			for (int x = tileX; x <= maxXtile; x++) {
+				for (int y = tileY; y >= maxYtile; y--) {
+					i++;
+					
+					final String tileUrl = tmsUrlTemplate
+							.replace("{zoom}", Integer.toString(zoom))
+							.replace("{x}", Integer.toString(x))
+							.replace("{y}", Integer.toString(y));
+					
+					// alternate hosts in turns, retries continue with the next one
+					final String[] urls;
+					if (options != null) {
+						urls = new String[options.length];
+						for (int j = 0; j < options.length; j++) {
+							final StringBuffer sb = new StringBuffer();
+							final Matcher matcher = SWITCH_PATTERN.matcher(tileUrl);
+							if (matcher.find()) {
+								matcher.appendReplacement(sb, options[(i + j) % options.length]);
+							}
+							matcher.appendTail(sb);
+							urls[j] = sb.toString();
+						}
+					} else {
+						urls = new String[] { tileUrl };
+					}
+					
+					completionService.submit(new Tile(x, y, tileUrl, urls, tileCache, hostSemaphoreMap, rescaleOp));
+				}
+			}
+			
+			for (i = 1; i <= total; i++) {
+				Future<Tile> future;
+				while ((future = completionService.poll(100, TimeUnit.MILLISECONDS)) == null) {
+					if (rc.isCancelled1()) {
+						return -1;
+					}
 				}
 				
-				i++;
+				final Tile tile;
+				try {
+					tile = future.get();
+				} catch (final ExecutionException e) {
+					final Throwable cause = e.getCause();
+					if (cause instanceof UserException) {
+						throw (UserException) cause;
+					}
+					throw new RuntimeException("internal error when reading tile", cause);
+				}
 				
-				String url = tmsUrlTemplate
-						.replace("{zoom}", Integer.toString(zoom))
-						.replace("{x}", Integer.toString(x))
-						.replace("{y}", Integer.toString(y));
+				rc.setProgress1((int) (100.0 * i / total), "Reading Map Tile: " + i + "/" + total);
 				
-				if (options != null) {
-					final StringBuffer sb = new StringBuffer();
-					final Matcher matcher = SWITCH_PATTERN.matcher(url);
-					if (matcher.find()) {
-						matcher.appendReplacement(sb, options[i % options.length]);
+				final long start = System.nanoTime();
+				ga.drawImage(tile.image,
+						256 * (tile.x - tileX) + offsetX,
+						bi.getHeight() - (256 * (tileY - tile.y) + offsetY), null);
+				composeTime += System.nanoTime() - start;
+			}
+		} catch (final InterruptedException e) {
+			Thread.currentThread().interrupt();
+			return -1;
+		} finally {
+			executor.shutdownNow();
+		}
+		
+		if (tileCache != null) {
+			rc.setProgress1(100, "Map tile cache: " + tileCache.getHits() + " hits, " + tileCache.getMisses() + " misses");
+		}
+
+		return composeTime;
+	}
+
+
+	private static final class Tile implements Callable<Tile> {
+		private final int x;
+		private final int y;
+		private final String tileUrl;
+		private final String[] urls;
+		private final TileCache tileCache;
+		private final java.util.Map<String, Semaphore> hostSemaphoreMap;
+		private final RescaleOp rescaleOp;
+		private BufferedImage image;
+
+		Tile(final int x, final int y, final String tileUrl, final String[] urls, final TileCache tileCache,
+				final java.util.Map<String, Semaphore> hostSemaphoreMap, final RescaleOp rescaleOp) {
+			this.x = x;
+			this.y = y;
+			this.tileUrl = tileUrl;
+			this.urls = urls;
+			this.tileCache = tileCache;
+			this.hostSemaphoreMap = hostSemaphoreMap;
+			this.rescaleOp = rescaleOp;
+		}
+
+		@Override
+		public Tile call() throws UserException, InterruptedException {
+			// cache key is independent of the chosen switch option
+			final byte[] cachedData = tileCache == null ? null : tileCache.get(tileUrl);
+			BufferedImage tile = cachedData == null ? null : decode(cachedData);
+			if (tile == null) {
+				final byte[] data = download();
+				tile = decode(data);
+				if (tile == null) {
+					throw new UserException("error reading tile " + tileUrl);
+				}
+				// only tiles which can be decoded are cached, not error pages
+				if (tileCache != null) {
+					try {
+						tileCache.put(tileUrl, data);
+					} catch (final IOException e) {
+						throw new UserException("error caching tile " + tileUrl, e);
 					}
-					matcher.appendTail(sb);
-					url = sb.toString();
 				}
+			}
+			
+			// convert to RGB format
+			final BufferedImage tile1 = new BufferedImage(tile.getWidth(), tile.getHeight(), BufferedImage.TYPE_INT_RGB);
+			tile1.getGraphics().drawImage(tile, 0, 0, null);
+			
+			image = rescaleOp.filter(tile1, null);
+			return this;
+		}
+
+		/**
+		 * @return decoded image or null if data is not an image
+		 */
+		private BufferedImage decode(final byte[] data) {
+			try {
+				return ImageIO.read(new ByteArrayInputStream(data));
+			} catch (final IOException e) {
+				return null;
+			}
+		}
+
+		private byte[] download() throws UserException, InterruptedException {
+			for (int attempt = 0; ; attempt++) {
+				final String url = urls[attempt % urls.length];
 				
-				rc.setProgress1((int) (100.0 * i / total), "Reading Map Tile: " + i + "/" + total);
+				final Semaphore semaphore;
+				try {
+					semaphore = getHostSemaphore(new URL(url).getHost());
+				} catch (final MalformedURLException e) {
+					throw new UserException("invalid tile URL " + url, e);
+				}
 				
-				final BufferedImage tile;
+				semaphore.acquire();
 				try {
-					tile = ImageIO.read(new URL(url));
+					return readTile(url);
 				} catch (final IOException e) {
-					throw new UserException("error reading tile " + url, e);
+					if (attempt + 1 >= MAX_ATTEMPTS) {
+						throw new UserException("error reading tile " + url, e);
+					}
+				} finally {
+					semaphore.release();
 				}
 				
-				// convert to RGB format
-				final BufferedImage tile1 = new BufferedImage(tile.getWidth(), tile.getHeight(), BufferedImage.TYPE_INT_RGB);
-				tile1.getGraphics().drawImage(tile, 0, 0, null);
-				
-				ga.drawImage(tile1,
-						new RescaleOp(backgroundMapVisibility, (1f - backgroundMapVisibility) * 255f, null),
-						256 * (x - tileX) + offsetX,
-						bi.getHeight() - (256 * (tileY - y) + offsetY));
+				Thread.sleep(RETRY_DELAY << attempt);
+			}
+		}
+
+		private Semaphore getHostSemaphore(final String host) {
+			synchronized (hostSemaphoreMap) {
+				Semaphore semaphore = hostSemaphoreMap.get(host);
+				if (semaphore == null) {
+					semaphore = new Semaphore(MAX_CONNECTIONS_PER_HOST);
+					hostSemaphoreMap.put(host, semaphore);
+				}
+				return semaphore;
+			}
+		}
+	}
+
+
+	private static byte[] readTile(final String url) throws IOException {
+		// stalled connection fails with SocketTimeoutException and is retried
+		final URLConnection connection = new URL(url).openConnection();
+		connection.setConnectTimeout(CONNECT_TIMEOUT);
+		connection.setReadTimeout(READ_TIMEOUT);
+		final InputStream is = connection.getInputStream();
+		try {
+			final ByteArrayOutputStream baos = new ByteArrayOutputStream();
+			final byte[] buffer = new byte[8192];
+			int n;
+			while ((n = is.read(buffer)) != -1) {
+				baos.write(buffer, 0, n);
 			}
+			return baos.toByteArray();
+		} finally {
+			is.close();
 		}
 	}
 
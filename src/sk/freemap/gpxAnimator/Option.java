@@ -6,7 +6,8 @@ public enum Option {
 
 	GUI("gui", "show GUI"),
 	INPUT("input", "input GPX filename"),
-	OUTPUT("output", "filename for generated video or filename template for saved image frames where %06d will be replaced by frame sequence number"),
+	OUTPUT("output", "filename for generated video or filename template for saved image frames where %06d will be replaced by frame sequence number; "
+			+ "uncompressed frames are written to .y4m (YUV4MPEG2) or .bgr (raw BGR) file or named pipe, or as YUV4MPEG2 to standard output if - is specified"),
 	LABEL("label", "text displayed next to marker"),
 	COLOR("color", "track color in #RRGGBB representation"),
 	MARGIN("margin", "margin in pixels"),
@@ -28,6 +29,10 @@ public enum Option {
 	ZOOM("zoom", "map zoom typically from 1 to 18; if not specified and TMS URL Template (Background Map) is specified then it is computed from width"),
 	FONT_SIZE("font-size", "datetime text font size; set to 0 for no date text"),
 	TMS_URL_TEMPLATE("tms-url-template", "slippymap (TMS) URL template for background map where {x}, {y} and {zoom} placeholders will be replaced; for example use http://tile.openstreetmap.org/{zoom}/{x}/{y}.png for OpenStreetMap"),
+	TILE_CACHE_DIR("tile-cache-dir", "directory where downloaded map tiles are cached between renderings; empty for no caching"),
+	TILE_CACHE_SIZE("tile-cache-size", "maximal size of the map tile cache in megabytes; least recently used tiles are removed first"),
+	TILE_CACHE_TTL("tile-cache-ttl", "time in milliseconds after which cached map tile is downloaded again; empty for no expiration"),
+	TILE_DOWNLOAD_THREADS("tile-download-threads", "number of map tiles downloaded concurrently; at most 2 connections are opened to the same host"),
 	ATTRIBUTION("attribution", "map attribution text; %MAP_ATTRIBUTION% placeholder is replaced by attribution of selected pre-defined map (only from GUI)"),
 	BACKGROUND_MAP_VISIBILITY("background-map-visibility", "opacity of the background map from 0.0 to 1.0"),
 	TOTAL_TIME("total-time", "total length of video in milliseconds; complementary to speedup"),
@@ -35,6 +40,27 @@ public enum Option {
 	FLASHBACK_COLOR("flashback-color", "transition color between non-idle parts"),
 	FLASHBACK_DURATION("flashback-duration", "color of the idle-skipping flashback effect in #AARRGGBB representation"),
 	SKIP_IDLE("skip-idle", "idle-skipping flashback effect duration in milliseconds; set to empty for no flashback"),
+	THREADS("threads", "number of threads reading input files and rendering frames in parallel; output is the same as when using single thread"),
+	GPX_CACHE("gpx-cache", "store projected tracks of input GPX files in .gpxbin files next to them and read them instead of GPX while the GPX file is unchanged"),
+	FRAME_QUEUE_SIZE("frame-queue-size", "number of rendered frames which may wait for encoding in a separate thread; 0 to encode in the rendering thread"),
+	ENCODER_THREADS("encoder-threads", "number of PNG or JPEG frames written in parallel; when greater than 1 frame queue size is not used"),
+	COMPRESSION_QUALITY("compression-quality", "PNG or JPEG compression quality from 0.0 to 1.0; for PNG lower quality means smaller files but slower compression; empty for default"),
+	START_FRAME("start-frame", "number of the first rendered frame as numbered in the complete animation, starting from 1; "
+			+ "parts of the animation rendered separately, for example on several machines, can be concatenated; empty to start from the beginning"),
+	END_FRAME("end-frame", "number of the last rendered frame as numbered in the complete animation; empty to render till the end"),
+	CHECKPOINT_INTERVAL("checkpoint-interval", "number of frames between checkpoints of rendering state stored next to PNG or JPEG frames "
+			+ "so that interrupted rendering can be resumed faster; 0 for no checkpoints"),
+	RESUME("resume", "continue interrupted rendering of PNG or JPEG frames from the first frame which was not written"),
+	SIMPLIFY_TOLERANCE("simplify-tolerance", "distance in pixels within which consecutive track points are merged when drawing tracks; "
+			+ "speeds up drawing of densely logged tracks at the cost of slightly changed track lines, for example 0.5; "
+			+ "markers still move through all points; 0 for no simplification"),
+	METRICS_FILE("metrics-file", "file where timings of rendering phases, frame latency percentiles, allocation rate and frames per second are written as JSON; "
+			+ "empty for no file"),
+	BATCH_DIR("batch-dir", "directory from which configurations saved from GUI (*.ga.xml) are rendered as jobs by a long-running batch service; "
+			+ "status of every job is written to <name>.status file next to it and the job is rendered again when the status file is deleted"),
+	BATCH_PORT("batch-port", "port on which the batch service accepts jobs over HTTP on the loopback interface; POST /jobs with configuration XML "
+			+ "stores it to the batch directory and responds with job name, GET /jobs/<name> returns job status; empty for no HTTP endpoint"),
+	BATCH_JOBS("batch-jobs", "number of jobs rendered concurrently by the batch service; jobs share map tile caches"),
 	HELP("help", "this help");
 	
 	private static java.util.Map<String, Option> map = new HashMap<String, Option>();
@@ -0,0 +1,140 @@
+/*
+ *  Copyright 2013 Martin Ždila, Freemap Slovakia
+ *  Licensed under the Apache License, Version 2.0 (the "License");
+ *  you may not use this file except in compliance with the License.
+ *  You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *  Unless required by applicable law or agreed to in writing, software
+ *  distributed under the License is distributed on an "AS IS" BASIS,
+ *  WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *  See the License for the specific language governing permissions and
+ *  limitations under the License.
+ */
+package sk.freemap.gpxAnimator;
+
+import java.awt.Graphics2D;
+import java.awt.Rectangle;
+import java.awt.image.BufferedImage;
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * Transparent layer of overlays which do not change once drawn, like attribution or reached waypoints.
+ * They are drawn to the layer only once and the layer is then composed onto every frame. The layer is
+ * divided to tiles and only tiles with some content are composed, so the cost does not depend on
+ * the number of overlays drawn.
+ */
+final class OverlayLayer {
+
+	private static final int TILE_SIZE = 64;
+
+	private final BufferedImage image;
+
+	private final Graphics2D graphics;
+
+	private final int columns;
+
+	private final int rows;
+
+	private final boolean[] occupied;
+
+	// occupied tiles merged to horizontal runs
+	private final List<Rectangle> runList = new ArrayList<Rectangle>();
+
+	private boolean changed;
+
+
+	OverlayLayer(final int width, final int height) {
+		image = new BufferedImage(width, height, BufferedImage.TYPE_INT_ARGB_PRE);
+		graphics = Renderer.createGraphics(image);
+		columns = (width + TILE_SIZE - 1) / TILE_SIZE;
+		rows = (height + TILE_SIZE - 1) / TILE_SIZE;
+		occupied = new boolean[columns * rows];
+	}
+
+
+	/**
+	 * @return graphics for drawing to the layer; drawn regions must be passed to {@link #markOccupied(Rectangle)}
+	 */
+	Graphics2D getGraphics() {
+		return graphics;
+	}
+
+
+	/**
+	 * Marks region of the layer containing some overlay.
+	 *
+	 * @param rect region or null if nothing was drawn
+	 */
+	void markOccupied(final Rectangle rect) {
+		if (rect == null || rect.isEmpty()) {
+			return;
+		}
+
+		final int minColumn = Math.max(0, rect.x / TILE_SIZE);
+		final int maxColumn = Math.min(columns - 1, (rect.x + rect.width - 1) / TILE_SIZE);
+		final int minRow = Math.max(0, rect.y / TILE_SIZE);
+		final int maxRow = Math.min(rows - 1, (rect.y + rect.height - 1) / TILE_SIZE);
+
+		for (int row = minRow; row <= maxRow; row++) {
+			for (int column = minColumn; column <= maxColumn; column++) {
+				if (!occupied[row * columns + column]) {
+					occupied[row * columns + column] = true;
+					changed = true;
+				}
+			}
+		}
+	}
+
+
+	/**
+	 * Composes occupied tiles of the layer onto the frame.
+	 *
+	 * @param dirtyList list where composed regions are added
+	 */
+	void drawTo(final Graphics2D g2, final List<Rectangle> dirtyList) {
+		if (changed) {
+			computeRuns();
+			changed = false;
+		}
+
+		for (final Rectangle run : runList) {
+			final int x2 = run.x + run.width;
+			final int y2 = run.y + run.height;
+			g2.drawImage(image, run.x, run.y, x2, y2, run.x, run.y, x2, y2, null);
+			dirtyList.add(new Rectangle(run));
+		}
+	}
+
+
+	private void computeRuns() {
+		runList.clear();
+		for (int row = 0; row < rows; row++) {
+			int column = 0;
+			while (column < columns) {
+				if (!occupied[row * columns + column]) {
+					column++;
+					continue;
+				}
+
+				final int start = column;
+				while (column < columns && occupied[row * columns + column]) {
+					column++;
+				}
+
+				final int x = start * TILE_SIZE;
+				final int y = row * TILE_SIZE;
+				runList.add(new Rectangle(x, y, Math.min(column * TILE_SIZE, image.getWidth()) - x,
+						Math.min(y + TILE_SIZE, image.getHeight()) - y));
+			}
+		}
+	}
+
+
+	void dispose() {
+		graphics.dispose();
+	}
+
+}
@@ -0,0 +1,318 @@
+/*
+ *  Copyright 2013 Martin Ždila, Freemap Slovakia
+ *  Licensed under the Apache License, Version 2.0 (the "License");
+ *  you may not use this file except in compliance with the License.
+ *  You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *  Unless required by applicable law or agreed to in writing, software
+ *  distributed under the License is distributed on an "AS IS" BASIS,
+ *  WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *  See the License for the specific language governing permissions and
+ *  limitations under the License.
+ */
+package sk.freemap.gpxAnimator;
+
+import java.io.BufferedOutputStream;
+import java.io.DataOutputStream;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.Charset;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.zip.CRC32;
+
+/**
+ * GPX content projected to Mercator coordinates. It can be stored to a binary .gpxbin file next to the GPX file
+ * and read from it on later runs while the GPX file does not change.
+ */
+final class ProjectedGpx {
+
+	private static final String SUFFIX = ".gpxbin";
+
+	private static final int MAGIC = 0x47505842; // GPXB
+
+	private static final int VERSION = 3;
+
+	// bytes at the beginning and at the end of GPX file covered by the checksum
+	private static final int CHECKSUM_SAMPLE = 65536;
+
+	private static final Charset UTF_8 = Charset.forName("UTF-8");
+
+	private final List<Points> pointsList;
+
+	private final Points waypoints;
+
+
+	private ProjectedGpx(final List<Points> pointsList, final Points waypoints) {
+		this.pointsList = pointsList;
+		this.waypoints = waypoints;
+	}
+
+
+	List<Points> getPointsList() {
+		return pointsList;
+	}
+
+
+	Points getWaypoints() {
+		return waypoints;
+	}
+
+
+	static ProjectedGpx project(final GpxStreamReader gpxReader) {
+		final List<Points> pointsList = new ArrayList<Points>();
+		for (final LatLonList latLonList : gpxReader.getPointLists()) {
+			pointsList.add(project(latLonList));
+		}
+		return new ProjectedGpx(pointsList, project(gpxReader.getWaypointList()));
+	}
+
+
+	private static Points project(final LatLonList latLonList) {
+		final int n = latLonList.size();
+		final Points points = new Points(n, latLonList.hasNames());
+		for (int i = 0; i < n; i++) {
+			points.times[i] = latLonList.getTime(i);
+			points.xs[i] = lonToX(latLonList.getLon(i));
+			points.ys[i] = latToY(latLonList.getLat(i));
+			if (points.names != null) {
+				points.names[i] = latLonList.getName(i);
+			}
+		}
+		return points;
+	}
+
+
+	static double lonToX(final double lon) {
+		return Math.toRadians(lon);
+	}
+
+
+	static double latToY(final double lat) {
+		return Math.log(Math.tan(Math.PI / 4 + Math.toRadians(lat) / 2));
+	}
+
+
+	/**
+	 * @return content of the .gpxbin file of given GPX file or null if it does not exist or is stale
+	 */
+	static ProjectedGpx load(final File gpxFile) throws IOException {
+		final File binFile = new File(gpxFile.getPath() + SUFFIX);
+		if (!binFile.isFile()) {
+			return null;
+		}
+
+		final FileInputStream fis = new FileInputStream(binFile);
+		try {
+			// read to heap rather than mapped, a mapped file can't be deleted or replaced on Windows until garbage collected
+			final FileChannel channel = fis.getChannel();
+			final long size = channel.size();
+			if (size > Integer.MAX_VALUE) {
+				return null;
+			}
+			final ByteBuffer bb = ByteBuffer.allocate((int) size);
+			while (bb.hasRemaining()) {
+				if (channel.read(bb) == -1) {
+					return null;
+				}
+			}
+			bb.flip();
+
+			if (bb.getInt() != MAGIC || bb.getInt() != VERSION
+					|| bb.getLong() != gpxFile.length() || bb.getLong() != gpxFile.lastModified()
+					|| bb.getLong() != checksum(gpxFile)) {
+				return null;
+			}
+
+			final int n = bb.getInt();
+			if (n < 0 || n > bb.remaining() / 5) {
+				return null; // corrupted count
+			}
+			final List<Points> pointsList = new ArrayList<Points>(n);
+			for (int i = 0; i < n; i++) {
+				final Points points = readPoints(bb);
+				if (points == null) {
+					return null;
+				}
+				pointsList.add(points);
+			}
+			final Points waypoints = readPoints(bb);
+			return waypoints == null ? null : new ProjectedGpx(pointsList, waypoints);
+		} catch (final RuntimeException e) {
+			return null; // truncated or corrupted file
+		} finally {
+			fis.close();
+		}
+	}
+
+
+	void save(final File gpxFile) throws IOException {
+		final File binFile = new File(gpxFile.getPath() + SUFFIX);
+		// unique name, the same GPX file may be used by several renderings at once
+		final File tmpFile = File.createTempFile(binFile.getName(), ".tmp", binFile.getAbsoluteFile().getParentFile());
+
+		boolean written = false;
+		final DataOutputStream dos = new DataOutputStream(new BufferedOutputStream(new FileOutputStream(tmpFile), 65536));
+		try {
+			dos.writeInt(MAGIC);
+			dos.writeInt(VERSION);
+			dos.writeLong(gpxFile.length());
+			dos.writeLong(gpxFile.lastModified());
+			dos.writeLong(checksum(gpxFile));
+
+			dos.writeInt(pointsList.size());
+			for (final Points points : pointsList) {
+				writePoints(dos, points);
+			}
+			writePoints(dos, waypoints);
+			dos.close();
+
+			binFile.delete();
+			if (!tmpFile.renameTo(binFile)) {
+				throw new IOException("can't rename " + tmpFile + " to " + binFile);
+			}
+			written = true;
+		} finally {
+			if (!written) {
+				dos.close();
+				tmpFile.delete();
+			}
+		}
+	}
+
+
+	/**
+	 * @return points or null if the data are corrupted
+	 */
+	private static Points readPoints(final ByteBuffer bb) {
+		final int n = bb.getInt();
+		// checked before allocating arrays, corrupted count could exhaust memory
+		if (n < 0 || n > (bb.remaining() - 1) / 24) {
+			return null;
+		}
+		final Points points = new Points(n, bb.get() != 0);
+
+		bb.asLongBuffer().get(points.times);
+		bb.position(bb.position() + n * 8);
+		bb.asDoubleBuffer().get(points.xs);
+		bb.position(bb.position() + n * 8);
+		bb.asDoubleBuffer().get(points.ys);
+		bb.position(bb.position() + n * 8);
+
+		for (int i = 0; points.names != null && i < n; i++) {
+			final int length = bb.getInt();
+			if (length < -1 || length > bb.remaining()) {
+				return null;
+			}
+			if (length != -1) {
+				final byte[] bytes = new byte[length];
+				bb.get(bytes);
+				points.names[i] = new String(bytes, UTF_8);
+			}
+		}
+
+		return points;
+	}
+
+
+	private static void writePoints(final DataOutputStream dos, final Points points) throws IOException {
+		final int n = points.size();
+		dos.writeInt(n);
+		dos.writeBoolean(points.names != null);
+		for (final long time : points.times) {
+			dos.writeLong(time);
+		}
+		for (final double x : points.xs) {
+			dos.writeDouble(x);
+		}
+		for (final double y : points.ys) {
+			dos.writeDouble(y);
+		}
+		if (points.names != null) {
+			for (final String name : points.names) {
+				if (name == null) {
+					dos.writeInt(-1);
+				} else {
+					final byte[] bytes = name.getBytes(UTF_8);
+					dos.writeInt(bytes.length);
+					dos.write(bytes);
+				}
+			}
+		}
+	}
+
+
+	/**
+	 * Checksum of the beginning and the end of the file. Reading the whole file would take as long as parsing it;
+	 * together with the size and the modification time this is enough to detect that the file was replaced.
+	 */
+	private static long checksum(final File file) throws IOException {
+		final CRC32 crc = new CRC32();
+		final RandomAccessFile raf = new RandomAccessFile(file, "r");
+		try {
+			final long length = raf.length();
+			final byte[] buffer = new byte[(int) Math.min(CHECKSUM_SAMPLE, length)];
+			raf.readFully(buffer);
+			crc.update(buffer);
+
+			if (length > CHECKSUM_SAMPLE) {
+				final long tailStart = Math.max(CHECKSUM_SAMPLE, length - CHECKSUM_SAMPLE);
+				final int tailLength = (int) (length - tailStart);
+				raf.seek(tailStart);
+				raf.readFully(buffer, 0, tailLength);
+				crc.update(buffer, 0, tailLength);
+			}
+		} finally {
+			raf.close();
+		}
+		return crc.getValue();
+	}
+
+
+	/**
+	 * Projected points in order of the GPX file.
+	 * Time is {@link Long#MIN_VALUE} for points without time, name is null for track points.
+	 */
+	static final class Points {
+		private final long[] times;
+		private final double[] xs;
+		private final double[] ys;
+		// null if no point has a name
+		private final String[] names;
+
+		private Points(final int size, final boolean withNames) {
+			times = new long[size];
+			xs = new double[size];
+			ys = new double[size];
+			names = withNames ? new String[size] : null;
+		}
+
+		int size() {
+			return times.length;
+		}
+
+		long getTime(final int index) {
+			return times[index];
+		}
+
+		double getX(final int index) {
+			return xs[index];
+		}
+
+		double getY(final int index) {
+			return ys[index];
+		}
+
+		String getName(final int index) {
+			return names == null ? null : names[index];
+		}
+	}
+
+}
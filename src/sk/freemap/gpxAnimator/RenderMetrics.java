@@ -0,0 +1,478 @@
+/*
+ *  Copyright 2013 Martin Ždila, Freemap Slovakia
+ *  Licensed under the Apache License, Version 2.0 (the "License");
+ *  you may not use this file except in compliance with the License.
+ *  You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *  Unless required by applicable law or agreed to in writing, software
+ *  distributed under the License is distributed on an "AS IS" BASIS,
+ *  WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *  See the License for the specific language governing permissions and
+ *  limitations under the License.
+ */
+package sk.freemap.gpxAnimator;
+
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.OutputStreamWriter;
+import java.io.PrintStream;
+import java.io.Writer;
+import java.lang.management.GarbageCollectorMXBean;
+import java.lang.management.ManagementFactory;
+import java.lang.management.ThreadMXBean;
+import java.nio.charset.Charset;
+import java.util.HashMap;
+import java.util.Locale;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ThreadFactory;
+
+/**
+ * Timings of rendering phases, latencies of frames, allocation and garbage collection of one rendering.
+ * Every thread records to its own {@link Recorder}, which is merged to the metrics when the thread is done,
+ * so recording does not need any synchronization. Phase times are summed over threads, so with several
+ * threads they may exceed the wall time.
+ * <p>
+ * Allocation is counted for the thread which created the metrics and for all threads created by
+ * {@link #newThreadFactory()}, also those without a recorder like tile download or frame encoding threads.
+ */
+final class RenderMetrics {
+
+	enum Phase {
+		PARSE("parse"),
+		PROJECT("project"),
+		TILE_FETCH("tileFetch"),
+		BACKGROUND("background"),
+		PAINT("paint"),
+		TAIL("tail"),
+		OVERLAY("overlay"),
+		MARKERS("markers"),
+		TEXT("text"),
+		ENCODE("encode"),
+		CLOSE("close");
+
+		private final String name;
+
+		private Phase(final String name) {
+			this.name = name;
+		}
+	}
+
+
+	private static final double NS_PER_MS = 1e6;
+
+	private static final double NS_PER_S = 1e9;
+
+	private static final double BYTES_PER_MB = 1024.0 * 1024.0;
+
+	private final long startTime = System.nanoTime();
+
+	private final long startGcTime;
+
+	private final long startGcCount;
+
+	private long renderingStartTime;
+
+	private long endTime;
+
+	private final long[] phaseTimes = new long[Phase.values().length];
+
+	private final long[] phaseCounts = new long[Phase.values().length];
+
+	private final Histogram frameLatency = new Histogram();
+
+	private final Histogram writeLatency = new Histogram();
+
+	// -1 if not supported by the JVM
+	private long allocatedBytes;
+
+	// counted threads which are running, with bytes they allocated before
+	private final java.util.Map<Thread, Long> runningThreadMap = new HashMap<Thread, Long>();
+
+	// no more threads are counted
+	private boolean stopped;
+
+	private int width;
+
+	private int height;
+
+	private int threads;
+
+	private int points;
+
+
+	RenderMetrics() {
+		final long[] gc = getGc();
+		startGcTime = gc[0];
+		startGcCount = gc[1];
+		allocatedBytes = getAllocatedBytes(Thread.currentThread()) == -1 ? -1 : 0;
+		threadStarted(Thread.currentThread());
+	}
+
+
+	/**
+	 * @return recorder for the current thread; it must be finished by the same thread
+	 */
+	Recorder newRecorder() {
+		return new Recorder(this);
+	}
+
+
+	/**
+	 * @return factory of threads whose allocation is counted until they end or until rendering is finished
+	 */
+	ThreadFactory newThreadFactory() {
+		final ThreadFactory threadFactory = Executors.defaultThreadFactory();
+		return new ThreadFactory() {
+			@Override
+			public Thread newThread(final Runnable r) {
+				return threadFactory.newThread(new Runnable() {
+					@Override
+					public void run() {
+						threadStarted(Thread.currentThread());
+						try {
+							r.run();
+						} finally {
+							threadEnded(Thread.currentThread());
+						}
+					}
+				});
+			}
+		};
+	}
+
+
+	private synchronized void threadStarted(final Thread thread) {
+		if (!stopped) {
+			runningThreadMap.put(thread, getAllocatedBytes(thread));
+		}
+	}
+
+
+	private synchronized void threadEnded(final Thread thread) {
+		final Long startAllocatedBytes = runningThreadMap.remove(thread);
+		if (startAllocatedBytes != null) {
+			addAllocated(startAllocatedBytes, getAllocatedBytes(thread));
+		}
+	}
+
+
+	private void addAllocated(final long startAllocatedBytes, final long endAllocatedBytes) {
+		if (allocatedBytes != -1 && startAllocatedBytes != -1 && endAllocatedBytes != -1) {
+			allocatedBytes += endAllocatedBytes - startAllocatedBytes;
+		}
+	}
+
+
+	void setAnimation(final int width, final int height, final int threads, final int points) {
+		this.width = width;
+		this.height = height;
+		this.threads = threads;
+		this.points = points;
+	}
+
+
+	/**
+	 * Marks start of rendering of frames; frames per second are computed from this moment.
+	 */
+	void renderingStarted() {
+		renderingStartTime = System.nanoTime();
+	}
+
+
+	synchronized void finished() {
+		endTime = System.nanoTime();
+
+		// threads which are still running, like the current one, are counted up to now
+		for (final java.util.Map.Entry<Thread, Long> entry : runningThreadMap.entrySet()) {
+			addAllocated(entry.getValue(), getAllocatedBytes(entry.getKey()));
+		}
+		runningThreadMap.clear();
+		stopped = true;
+	}
+
+
+	private synchronized void merge(final Recorder recorder) {
+		for (int i = 0; i < phaseTimes.length; i++) {
+			phaseTimes[i] += recorder.phaseTimes[i];
+			phaseCounts[i] += recorder.phaseCounts[i];
+		}
+		frameLatency.add(recorder.frameLatency);
+		writeLatency.add(recorder.writeLatency);
+	}
+
+
+	private double getFps() {
+		final long time = endTime - renderingStartTime;
+		return time > 0 ? writeLatency.count * NS_PER_S / time : 0;
+	}
+
+
+	/**
+	 * Prints end-of-run report. Metrics must be complete, all recorders finished.
+	 */
+	synchronized void print(final PrintStream out) {
+		final long[] gc = getGc();
+		final double wallTime = (endTime - startTime) / NS_PER_S;
+
+		out.println(String.format(Locale.ROOT, "Rendered %d frames in %.2f s (%.1f fps), total time %.2f s",
+				writeLatency.count, (endTime - renderingStartTime) / NS_PER_S, getFps(), wallTime));
+
+		final StringBuilder sb = new StringBuilder("Phases [ms]:");
+		for (final Phase phase : Phase.values()) {
+			if (phaseCounts[phase.ordinal()] > 0) {
+				sb.append(String.format(Locale.ROOT, " %s %.1f", phase.name, phaseTimes[phase.ordinal()] / NS_PER_MS));
+			}
+		}
+		out.println(sb);
+
+		out.println("Frame rendering [ms]: " + frameLatency.format());
+		out.println("Frame writing [ms]: " + writeLatency.format());
+
+		if (allocatedBytes != -1) {
+			out.println(String.format(Locale.ROOT, "Allocated %.1f MB (%.1f MB/s), garbage collection %d ms in %d collections",
+					allocatedBytes / BYTES_PER_MB, allocatedBytes / BYTES_PER_MB / wallTime, gc[0] - startGcTime, gc[1] - startGcCount));
+		}
+	}
+
+
+	/**
+	 * Writes metrics as JSON. Metrics must be complete, all recorders finished.
+	 */
+	synchronized void write(final File file) throws IOException {
+		final long[] gc = getGc();
+		final double wallTime = (endTime - startTime) / NS_PER_S;
+
+		final StringBuilder sb = new StringBuilder();
+		sb.append("{\n");
+		sb.append("  \"width\": ").append(width).append(",\n");
+		sb.append("  \"height\": ").append(height).append(",\n");
+		sb.append("  \"threads\": ").append(threads).append(",\n");
+		sb.append("  \"points\": ").append(points).append(",\n");
+		sb.append("  \"frames\": ").append(writeLatency.count).append(",\n");
+		sb.append("  \"wallTimeMs\": ").append(format((endTime - startTime) / NS_PER_MS)).append(",\n");
+		sb.append("  \"renderingTimeMs\": ").append(format((endTime - renderingStartTime) / NS_PER_MS)).append(",\n");
+		sb.append("  \"fps\": ").append(format(getFps())).append(",\n");
+
+		sb.append("  \"phases\": {");
+		String separator = "\n";
+		for (final Phase phase : Phase.values()) {
+			sb.append(separator).append("    \"").append(phase.name).append("\": { \"timeMs\": ")
+					.append(format(phaseTimes[phase.ordinal()] / NS_PER_MS)).append(", \"count\": ").append(phaseCounts[phase.ordinal()]).append(" }");
+			separator = ",\n";
+		}
+		sb.append("\n  },\n");
+
+		sb.append("  \"frameLatencyMs\": ").append(frameLatency.toJson()).append(",\n");
+		sb.append("  \"writeLatencyMs\": ").append(writeLatency.toJson()).append(",\n");
+
+		if (allocatedBytes != -1) {
+			sb.append("  \"allocatedBytes\": ").append(allocatedBytes).append(",\n");
+			sb.append("  \"allocationRateMBps\": ").append(format(allocatedBytes / BYTES_PER_MB / wallTime)).append(",\n");
+		}
+		sb.append("  \"gcTimeMs\": ").append(gc[0] - startGcTime).append(",\n");
+		sb.append("  \"gcCount\": ").append(gc[1] - startGcCount).append("\n");
+		sb.append("}\n");
+
+		final Writer writer = new OutputStreamWriter(new FileOutputStream(file), Charset.forName("UTF-8"));
+		try {
+			writer.write(sb.toString());
+		} finally {
+			writer.close();
+		}
+	}
+
+
+	private static String format(final double value) {
+		return String.format(Locale.ROOT, "%.3f", value);
+	}
+
+
+	// total time and count of collections
+	private static long[] getGc() {
+		final long[] gc = new long[2];
+		for (final GarbageCollectorMXBean gcBean : ManagementFactory.getGarbageCollectorMXBeans()) {
+			gc[0] += Math.max(0, gcBean.getCollectionTime());
+			gc[1] += Math.max(0, gcBean.getCollectionCount());
+		}
+		return gc;
+	}
+
+
+	/**
+	 * @return bytes allocated by the running thread or -1 if not supported by the JVM
+	 */
+	private static long getAllocatedBytes(final Thread thread) {
+		final ThreadMXBean threadBean = ManagementFactory.getThreadMXBean();
+		if (threadBean instanceof com.sun.management.ThreadMXBean) {
+			final com.sun.management.ThreadMXBean sunThreadBean = (com.sun.management.ThreadMXBean) threadBean;
+			if (sunThreadBean.isThreadAllocatedMemorySupported() && sunThreadBean.isThreadAllocatedMemoryEnabled()) {
+				return sunThreadBean.getThreadAllocatedBytes(thread.getId());
+			}
+		}
+		return -1;
+	}
+
+
+	/**
+	 * Metrics recorded by a single thread.
+	 */
+	static final class Recorder {
+
+		private final RenderMetrics metrics;
+
+		private final long[] phaseTimes = new long[Phase.values().length];
+
+		private final long[] phaseCounts = new long[Phase.values().length];
+
+		private final Histogram frameLatency = new Histogram();
+
+		private final Histogram writeLatency = new Histogram();
+
+
+		private Recorder(final RenderMetrics metrics) {
+			this.metrics = metrics;
+		}
+
+
+		void add(final Phase phase, final long time) {
+			phaseTimes[phase.ordinal()] += time;
+			phaseCounts[phase.ordinal()]++;
+		}
+
+
+		/**
+		 * Records time of rendering of a frame which was not skipped.
+		 */
+		void addFrame(final long time) {
+			frameLatency.record(time);
+		}
+
+
+		/**
+		 * Records time of passing a frame to the frame writer.
+		 *
+		 * @param encoded whether the frame was encoded in the calling thread, so the time is also counted as encoding
+		 */
+		void addWrite(final long time, final boolean encoded) {
+			writeLatency.record(time);
+			if (encoded) {
+				add(Phase.ENCODE, time);
+			}
+		}
+
+
+		/**
+		 * Records encoding time of all frames passed to the frame writer, measured by the writer in its own threads.
+		 */
+		void addEncode(final long time) {
+			phaseTimes[Phase.ENCODE.ordinal()] += time;
+			phaseCounts[Phase.ENCODE.ordinal()] += writeLatency.count;
+		}
+
+
+		/**
+		 * Merges recorded metrics to the rendering metrics.
+		 */
+		void finish() {
+			metrics.merge(this);
+		}
+
+	}
+
+
+	/**
+	 * Histogram of nanosecond durations. Durations are counted in buckets with relative width below 1/32,
+	 * which bounds the error of percentiles regardless of the number of recorded values.
+	 */
+	static final class Histogram {
+
+		private static final int SUB_BUCKET_BITS = 5;
+
+		private static final int SUB_BUCKETS = 1 << SUB_BUCKET_BITS;
+
+		private final long[] counts = new long[(64 - SUB_BUCKET_BITS) * SUB_BUCKETS];
+
+		private long count;
+
+		private long total;
+
+		private long max;
+
+
+		void record(final long value) {
+			final long v = Math.max(0, value);
+			counts[index(v)]++;
+			count++;
+			total += v;
+			max = Math.max(max, v);
+		}
+
+
+		void add(final Histogram histogram) {
+			for (int i = 0; i < counts.length; i++) {
+				counts[i] += histogram.counts[i];
+			}
+			count += histogram.count;
+			total += histogram.total;
+			max = Math.max(max, histogram.max);
+		}
+
+
+		// values below 2 * SUB_BUCKETS have their own buckets, then every power of two is divided to SUB_BUCKETS buckets
+		private static int index(final long value) {
+			final int shift = Math.max(0, 63 - Long.numberOfLeadingZeros(value) - SUB_BUCKET_BITS);
+			return shift * SUB_BUCKETS + (int) (value >>> shift);
+		}
+
+
+		// highest value of the bucket
+		private static long highestValue(final int index) {
+			final int shift = Math.max(0, index / SUB_BUCKETS - 1);
+			return ((long) (index - shift * SUB_BUCKETS + 1) << shift) - 1;
+		}
+
+
+		/**
+		 * @param percentile percentile from 0 to 100
+		 * @return value which is not exceeded by the given percentage of values, 0 if there are no values
+		 */
+		long getPercentile(final double percentile) {
+			final long rank = Math.max(1, (long) Math.ceil(percentile / 100.0 * count));
+			long n = 0;
+			for (int i = 0; i < counts.length; i++) {
+				n += counts[i];
+				if (n >= rank) {
+					return Math.min(max, highestValue(i));
+				}
+			}
+			return max;
+		}
+
+
+		private double getMean() {
+			return count == 0 ? 0 : (double) total / count;
+		}
+
+
+		String format() {
+			return String.format(Locale.ROOT, "mean %.2f, p50 %.2f, p90 %.2f, p99 %.2f, max %.2f",
+					getMean() / NS_PER_MS, getPercentile(50) / NS_PER_MS, getPercentile(90) / NS_PER_MS,
+					getPercentile(99) / NS_PER_MS, max / NS_PER_MS);
+		}
+
+
+		String toJson() {
+			return "{ \"count\": " + count
+					+ ", \"mean\": " + RenderMetrics.format(getMean() / NS_PER_MS)
+					+ ", \"p50\": " + RenderMetrics.format(getPercentile(50) / NS_PER_MS)
+					+ ", \"p90\": " + RenderMetrics.format(getPercentile(90) / NS_PER_MS)
+					+ ", \"p99\": " + RenderMetrics.format(getPercentile(99) / NS_PER_MS)
+					+ ", \"max\": " + RenderMetrics.format(max / NS_PER_MS) + " }";
+		}
+
+	}
+
+}
@@ -19,46 +19,82 @@ import java.awt.Color;
 import java.awt.Font;
 import java.awt.FontMetrics;
 import java.awt.Graphics2D;
+import java.awt.Rectangle;
 import java.awt.RenderingHints;
-import java.awt.Shape;
-import java.awt.font.FontRenderContext;
-import java.awt.font.TextLayout;
-import java.awt.geom.AffineTransform;
 import java.awt.geom.Ellipse2D;
-import java.awt.geom.Line2D;
-import java.awt.geom.Point2D;
+import java.awt.geom.Path2D;
+import java.awt.geom.Rectangle2D;
 import java.awt.image.BufferedImage;
+import java.io.File;
+import java.io.IOException;
 import java.text.DateFormat;
 import java.util.ArrayList;
+import java.util.Arrays;
 import java.util.Collections;
 import java.util.Date;
+import java.util.IdentityHashMap;
 import java.util.Iterator;
 import java.util.List;
-import java.util.Map.Entry;
-import java.util.TreeMap;
-
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.TimeUnit;
+
+import sk.freemap.gpxAnimator.frameWriter.AsyncFrameWriter;
 import sk.freemap.gpxAnimator.frameWriter.FileFrameWriter;
+import sk.freemap.gpxAnimator.frameWriter.FrameBuffer;
+import sk.freemap.gpxAnimator.frameWriter.FrameBufferPool;
 import sk.freemap.gpxAnimator.frameWriter.FrameWriter;
+import sk.freemap.gpxAnimator.frameWriter.RawFrameWriter;
+import sk.freemap.gpxAnimator.frameWriter.TimedFrameWriter;
 import sk.freemap.gpxAnimator.frameWriter.VideoFrameWriter;
 
 
 public class Renderer {
 
 	private static final double MS = 1000d;
-	private static final DateFormat DATE_FORMAT = DateFormat.getDateTimeInstance(DateFormat.MEDIUM, DateFormat.MEDIUM);
+
+	// antialiasing may touch pixels slightly outside of the shape
+	private static final double DIRTY_PADDING = 2.0;
+
+	// above this count regions are restored as single bounding rectangle
+	private static final int MAX_DIRTY_REGIONS = 256;
+
+	// number of quantized tail colors from the track color to the end of the tail
+	private static final int TAIL_COLOR_LEVELS = 256;
 
 	private final Configuration cfg;
 
-	private final List<List<TreeMap<Long, Point2D>>> timePointMapListList = new ArrayList<List<TreeMap<Long,Point2D>>>();
+	private final List<List<TimePoints>> timePointsListList = new ArrayList<List<TimePoints>>();
+
+	// points of track lines simplified in image coordinates; markers move through all points
+	private final List<List<TimePoints>> pathPointsListList = new ArrayList<List<TimePoints>>();
+
+	private final List<Long[]> spanList = new ArrayList<Long[]>();
+
+	// tail colors of each track indexed by tail color level
+	private final List<Color[]> tailColorsList = new ArrayList<Color[]>();
+
+	private final List<BasicStroke> strokeList = new ArrayList<BasicStroke>();
+
+	private TimePoints waypoints;
 
 	private Font font;
 	private FontMetrics fontMetrics;
+	private TextSpriteCache textSprites;
 
 	private long minTime = Long.MAX_VALUE;
 	private double minX = Double.POSITIVE_INFINITY, maxX = Double.NEGATIVE_INFINITY, minY = Double.POSITIVE_INFINITY, maxY = Double.NEGATIVE_INFINITY;
 
 	private double speedup;
 
+	private FrameIntervals activeFrames;
+
 
 	public Renderer(final Configuration cfg) throws UserException {
 		this.cfg = cfg;
@@ -66,29 +102,33 @@ public class Renderer {
 
 
 	public void render(final RenderingContext rc) throws UserException {
-		final List<Long[]> spanList = new ArrayList<Long[]>();
-
-		final TreeMap<Long, Point2D> wpMap = new TreeMap<Long, Point2D>();
-
-		int i = -1;
-		for (final TrackConfiguration trackConfiguration : cfg.getTrackConfigurationList()) {
-			i++;
+		int startFrame = cfg.getStartFrame() == null ? 1 : cfg.getStartFrame();
+		if (startFrame < 1) {
+			throw new UserException("start frame must be at least 1");
+		}
+		if (cfg.getEndFrame() != null && cfg.getEndFrame() < startFrame) {
+			throw new UserException("end frame must not be less than start frame");
+		}
 
-			final GpxContentHandler gch = new GpxContentHandler();
+		final RenderMetrics metrics = new RenderMetrics();
+		final RenderMetrics.Recorder recorder = metrics.newRecorder();
 
-			GpxParser.parseGpx(trackConfiguration.getInputGpx(), gch);
+		final List<ParsedTrack> parsedTrackList = parseTracks(rc, metrics);
+		if (parsedTrackList == null) {
+			return;
+		}
 
-			final List<TreeMap<Long, Point2D>> timePointMapList = new ArrayList<TreeMap<Long, Point2D>>();
+		final TimePoints.Builder waypointsBuilder = new TimePoints.Builder();
 
-			for (final List<LatLon> latLonList : gch.getPointLists()) {
-				final TreeMap<Long, Point2D> timePointMap = new TreeMap<Long,Point2D>();
-				toTimePointMap(timePointMap, i, latLonList);
-				timePointMapList.add(timePointMap);
+		// merging in order of configured tracks keeps the result independent of parsing order
+		for (final ParsedTrack parsedTrack : parsedTrackList) {
+			final List<TimePoints> timePointsList = parsedTrack.timePointsList;
 
-				toTimePointMap(wpMap, i, gch.getWaypointList());
+			for (final TimePoints timePoints : timePointsList) {
+				toTimePoints(waypointsBuilder, parsedTrack, parsedTrack.waypointList);
 
-				Long t0 = timePointMap.firstKey();
-				Long t1 = timePointMap.lastKey() + cfg.getTailDuration();
+				Long t0 = timePoints.getFirstTime();
+				Long t1 = timePoints.getLastTime() + cfg.getTailDuration();
 				test: { // code in the block merges connected spans; it is currently not important to do this
 					for (final Iterator<Long[]> iter = spanList.iterator(); iter.hasNext(); ) {
 						final Long[] span = iter.next();
@@ -112,8 +152,30 @@ public class Renderer {
 					spanList.add(new Long[] { t0, t1 });
 				}
 			}
-			Collections.reverse(timePointMapList); // reversing because of last known location drawing
-			timePointMapListList.add(timePointMapList);
+			Collections.reverse(timePointsList); // reversing because of last known location drawing
+			timePointsListList.add(timePointsList);
+			tailColorsList.add(createTailColors(parsedTrack.trackConfiguration.getColor()));
+			strokeList.add(new BasicStroke(parsedTrack.trackConfiguration.getLineWidth(), BasicStroke.CAP_ROUND, BasicStroke.JOIN_ROUND));
+
+			minX = Math.min(minX, parsedTrack.minX);
+			maxX = Math.max(maxX, parsedTrack.maxX);
+			minY = Math.min(minY, parsedTrack.minY);
+			maxY = Math.max(maxY, parsedTrack.maxY);
+		}
+
+		waypoints = waypointsBuilder.build();
+
+		if (cfg.getMinLon() != null) {
+			minX = ProjectedGpx.lonToX(cfg.getMinLon());
+		}
+		if (cfg.getMaxLon() != null) {
+			maxX = ProjectedGpx.lonToX(cfg.getMaxLon());
+		}
+		if (cfg.getMaxLat() != null) {
+			minY = ProjectedGpx.latToY(cfg.getMaxLat());
+		}
+		if (cfg.getMinLat() != null) {
+			maxY = ProjectedGpx.latToY(cfg.getMinLat());
 		}
 
 		final boolean userSpecifiedWidth = cfg.getWidth() != null;
@@ -151,33 +213,66 @@ public class Renderer {
 		}
 
 		long maxTime = Long.MIN_VALUE;
+		int points = 0;
 
 		// translate to 0,0
-		for (final List<TreeMap<Long, Point2D>> timePointMapList : timePointMapListList) {
-			for (final TreeMap<Long, Point2D> timePointMap : timePointMapList) {
-				maxTime = Math.max(maxTime, timePointMap.lastKey());
-				minTime = Math.min(minTime, timePointMap.firstKey());
-
-				for (final Point2D point : timePointMap.values()) {
-					point.setLocation((point.getX() - minX) * scale, (maxY - point.getY()) * scale);
-				}
+		final long projectStart = System.nanoTime();
+		for (final List<TimePoints> timePointsList : timePointsListList) {
+			final List<TimePoints> pathPointsList = new ArrayList<TimePoints>(timePointsList.size());
+			for (final TimePoints timePoints : timePointsList) {
+				maxTime = Math.max(maxTime, timePoints.getLastTime());
+				minTime = Math.min(minTime, timePoints.getFirstTime());
+				points += timePoints.size();
+
+				timePoints.toImage(minX, maxY, scale);
+				pathPointsList.add(timePoints.simplify(cfg.getSimplifyTolerance()));
 			}
+			pathPointsListList.add(pathPointsList);
 		}
 
-		if (!wpMap.isEmpty()) {
-			maxTime = Math.max(maxTime, wpMap.lastKey());
-			minTime = Math.min(minTime, wpMap.firstKey());
+		if (!waypoints.isEmpty()) {
+			maxTime = Math.max(maxTime, waypoints.getLastTime());
+			minTime = Math.min(minTime, waypoints.getFirstTime());
 
-			for (final Point2D point : wpMap.values()) {
-				point.setLocation((point.getX() - minX) * scale, (maxY - point.getY()) * scale);
-			}
+			waypoints.toImage(minX, maxY, scale);
 		}
+		recorder.add(RenderMetrics.Phase.PROJECT, System.nanoTime() - projectStart);
 
 		final String frameFilePattern = cfg.getOutput().toString();
 		final int dot = frameFilePattern.lastIndexOf('.');
 		final String ext = dot == -1 ? null : frameFilePattern.substring(dot + 1);
 		final boolean toImages = "png".equalsIgnoreCase(ext) || "jpg".equalsIgnoreCase(ext);
 
+		speedup = cfg.getTotalTime() == null ? cfg.getSpeedup() : 1.0 * (maxTime - minTime) / cfg.getTotalTime();
+
+		final int frames = (int) ((maxTime + cfg.getTailDuration() - minTime) * cfg.getFps() / (MS * speedup));
+
+		activeFrames = getActiveFrames(frames);
+		if (activeFrames.size() == 0) {
+			throw new UserException(cfg.isSkipIdle()
+					? "there are no frames to render; tracks contain no movement, use --keep-idle to render them anyway"
+					: "there are no frames to render; tracks are too short");
+		}
+
+		if (cfg.isResume()) {
+			if (!toImages) {
+				throw new UserException("only rendering of PNG or JPEG frames can be resumed");
+			}
+			startFrame = FileFrameWriter.findMissingFrame(frameFilePattern, startFrame);
+		}
+
+		// rendered range of frame ordinals; earlier frames are only painted to the track history
+		final int activeFrameCount = activeFrames.size();
+		final int fromOrdinal = startFrame - 1;
+		final int toOrdinal = cfg.getEndFrame() == null ? activeFrameCount : Math.min(activeFrameCount, cfg.getEndFrame());
+		if (fromOrdinal >= toOrdinal) {
+			if (cfg.isResume()) {
+				System.out.println("All frames are already rendered.");
+				return;
+			}
+			throw new UserException("start frame " + startFrame + " is after the last frame " + activeFrameCount);
+		}
+
 		int realWidth = (int) Math.round(((maxX - minX) * scale));
 		int realHeight = (int) Math.round(((maxY - minY) * scale));
 
@@ -191,153 +286,555 @@ public class Renderer {
 
 		final BufferedImage bi = new BufferedImage(realWidth, realHeight, BufferedImage.TYPE_3BYTE_BGR);
 
-		final FrameWriter frameWriter = toImages
-				? new FileFrameWriter(frameFilePattern, ext, cfg.getFps())
-				: new VideoFrameWriter(cfg.getOutput(), cfg.getFps(), realWidth, realHeight);
+		final FrameWriter frameWriter = createFrameWriter(frameFilePattern, ext, toImages, startFrame, realWidth, realHeight, metrics.newThreadFactory());
+		// writers encoding in their own threads measure the encoding time themselves
+		final boolean encodedOnWrite = !(frameWriter instanceof TimedFrameWriter);
 
-		final Graphics2D ga = (Graphics2D) bi.getGraphics();
+		// closed also when rendering is cancelled or fails, so that a long-running JVM does not leak encoders
+		boolean closed = false;
+		try {
+			final Graphics2D ga = (Graphics2D) bi.getGraphics();
 
-		System.out.println(realWidth + "x" + realHeight + ";" + scale);
+			System.out.println(realWidth + "x" + realHeight + ";" + scale);
 
-		if (cfg.getTmsUrlTemplate() == null) {
-			ga.setColor(Color.white);
-			ga.fillRect(0, 0, realWidth, realHeight);
-		} else {
-			Map.drawMap(bi, cfg.getTmsUrlTemplate(), cfg.getBackgroundMapVisibility(), zoom, minX, maxX, minY, maxY, rc);
-		}
+			metrics.setAnimation(realWidth, realHeight, cfg.getThreads(), points);
 
-		if (cfg.getFontSize() > 0) {
-			font = new Font(Font.MONOSPACED, Font.PLAIN, cfg.getFontSize());
-			fontMetrics = ga.getFontMetrics(font);
-		}
+			final long backgroundStart = System.nanoTime();
+			if (cfg.getTmsUrlTemplate() == null) {
+				ga.setColor(Color.white);
+				ga.fillRect(0, 0, realWidth, realHeight);
+				recorder.add(RenderMetrics.Phase.BACKGROUND, System.nanoTime() - backgroundStart);
+			} else {
+				final TileCache tileCache = createTileCache();
+				final long composeTime = Map.drawMap(bi, cfg.getTmsUrlTemplate(), cfg.getBackgroundMapVisibility(), zoom, minX, maxX, minY, maxY,
+						tileCache, cfg.getTileDownloadThreads(), metrics.newThreadFactory(), rc);
+				if (composeTime == -1) {
+					return;
+				}
+				recorder.add(RenderMetrics.Phase.TILE_FETCH, System.nanoTime() - backgroundStart - composeTime);
+				recorder.add(RenderMetrics.Phase.BACKGROUND, composeTime);
+			}
 
-		speedup = cfg.getTotalTime() == null ? cfg.getSpeedup() : 1.0 * (maxTime - minTime) / cfg.getTotalTime();
+			if (cfg.getFontSize() > 0) {
+				font = new Font(Font.MONOSPACED, Font.PLAIN, cfg.getFontSize());
+				fontMetrics = ga.getFontMetrics(font);
+				textSprites = new TextSpriteCache(font);
+			}
 
-		final int frames = (int) ((maxTime + cfg.getTailDuration() - minTime) * cfg.getFps() / (MS * speedup));
+			ga.dispose();
 
-		float skip = -1f;
-		for (int frame = 1; frame < frames; frame++) {
-			if (rc.isCancelled1()) {
-				return;
+			if (fromOrdinal > 0 || toOrdinal < activeFrameCount) {
+				System.out.println("Rendering frames " + startFrame + " to " + toOrdinal + " of " + activeFrameCount);
 			}
 
-			final Long time = getTime(frame);
-			skip: if (cfg.isSkipIdle()) {
-				for (final Long[] span : spanList) {
-					if (span[0] <= time && span[1] >= time) {
-						break skip;
+			// checkpoints of another animation are not used
+			final String checkpointKey = toImages && (cfg.getCheckpointInterval() > 0 || cfg.isResume())
+					? getCheckpointKey(realWidth, realHeight, scale, minX, maxY, maxTime) : null;
+			final Checkpoint checkpoint = cfg.isResume() ? loadCheckpoint(checkpointKey, activeFrames.getFrame(fromOrdinal)) : null;
+
+			metrics.renderingStarted();
+
+			if (cfg.getThreads() > 1) {
+				if (!renderInParallel(rc, bi, frameWriter, fromOrdinal, toOrdinal, checkpoint, checkpointKey, metrics, recorder)) {
+					return;
+				}
+			} else {
+				final FrameRenderer frameRenderer = new FrameRenderer(bi, recorder);
+				try {
+					if (checkpoint != null) {
+						frameRenderer.restore(checkpoint);
+					}
+
+					for (int ordinal = fromOrdinal; ordinal < toOrdinal; ordinal++) {
+						if (rc.isCancelled1()) {
+							return;
+						}
+
+						setProgress(rc, ordinal - fromOrdinal, toOrdinal - fromOrdinal);
+
+						final BufferedImage frameImage = frameRenderer.renderFrame(activeFrames.getFrame(ordinal));
+						if (frameImage != null) {
+							final long writeStart = System.nanoTime();
+							frameWriter.addFrame(frameImage);
+							recorder.addWrite(System.nanoTime() - writeStart, encodedOnWrite);
+						}
+
+						if (isCheckpoint(ordinal, checkpointKey)) {
+							frameRenderer.saveCheckpoint(checkpointKey);
+						}
 					}
+				} finally {
+					frameRenderer.dispose();
 				}
-				rc.setProgress1((int) (100.0 * frame / frames), "Skipping unused Frame: " + frame + "/" + (frames - 1));
-				skip = 1f;
-				continue;
 			}
 
-			rc.setProgress1((int) (100.0 * frame / frames), "Rendering Frame: " + frame + "/" + (frames - 1));
+			final long closeStart = System.nanoTime();
+			closed = true;
+			frameWriter.close();
+			recorder.add(RenderMetrics.Phase.CLOSE, System.nanoTime() - closeStart);
+			if (!encodedOnWrite) {
+				recorder.addEncode(((TimedFrameWriter) frameWriter).getEncodeTime());
+			}
 
-			paint(bi, frame, 0);
+			if (checkpointKey != null) {
+				Checkpoint.delete(cfg.getOutput());
+			}
+		} finally {
+			if (!closed) {
+				try {
+					frameWriter.close();
+				} catch (final UserException e) {
+					System.err.println("Can't close frame writer: " + e.getMessage());
+				}
+			}
+		}
 
-			final BufferedImage bi2 = Utils.deepCopy(bi);
+		recorder.finish();
+		metrics.finished();
+		metrics.print(System.out);
 
-			paint(bi2, frame, cfg.getTailDuration());
+		if (cfg.getMetricsFile() != null) {
+			try {
+				metrics.write(cfg.getMetricsFile());
+			} catch (final IOException e) {
+				throw new UserException("can't write metrics to " + cfg.getMetricsFile(), e);
+			}
+		}
 
-			drawWaypoints(bi2, frame, wpMap);
+		System.out.println("Done.");
+	}
 
-			drawMarker(bi2, frame);
 
-			if (font != null) {
-				drawTime(bi2, frame);
-				drawAttribution(bi2, cfg.getAttribution());
+	private String getCheckpointKey(final int width, final int height, final double scale, final double minX, final double maxY, final long maxTime) {
+		final StringBuilder sb = new StringBuilder();
+		sb.append(width).append('x').append(height).append(';').append(scale).append(';').append(minX).append(';').append(maxY)
+				.append(';').append(minTime).append(';').append(maxTime).append(';').append(speedup).append(';').append(cfg.getFps())
+				.append(';').append(activeFrames.size()).append(';').append(cfg.getTmsUrlTemplate()).append(';').append(cfg.getBackgroundMapVisibility())
+				.append(';').append(cfg.getSimplifyTolerance());
+		final List<TrackConfiguration> trackConfigurationList = cfg.getTrackConfigurationList();
+		for (int i = 0; i < trackConfigurationList.size(); i++) {
+			sb.append(';').append(trackConfigurationList.get(i).getColor().getRGB()).append(',').append(trackConfigurationList.get(i).getLineWidth());
+			for (final TimePoints timePoints : timePointsListList.get(i)) {
+				sb.append(',').append(timePoints.size());
 			}
+		}
+		return sb.toString();
+	}
 
-			final Color flashbackColor = cfg.getFlashbackColor();
-			if (skip > 0f && flashbackColor.getAlpha() > 0 && cfg.getFlashbackDuration() != null && cfg.getFlashbackDuration() > 0) {
-				final Graphics2D g2 = (Graphics2D) bi2.getGraphics();
-				g2.setColor(new Color(flashbackColor.getRed(), flashbackColor.getGreen(), flashbackColor.getBlue(), (int) (flashbackColor.getAlpha() * skip)));
-				g2.fillRect(0, 0, bi2.getWidth(), bi2.getHeight());
-				skip -= 1000f / cfg.getFlashbackDuration() / cfg.getFps();
-			}
 
-			frameWriter.addFrame(bi2);
+	private Checkpoint loadCheckpoint(final String key, final int beforeFrame) {
+		try {
+			final Checkpoint checkpoint = Checkpoint.load(cfg.getOutput(), key, beforeFrame);
+			if (checkpoint != null) {
+				System.out.println("Track history is restored from checkpoint");
+			}
+			return checkpoint;
+		} catch (final IOException e) {
+			System.err.println("Can't read checkpoint: " + e.getMessage());
+			return null;
 		}
+	}
 
-		frameWriter.close();
 
-		System.out.println("Done.");
+	private boolean isCheckpoint(final int ordinal, final String checkpointKey) {
+		return checkpointKey != null && cfg.getCheckpointInterval() > 0 && (ordinal + 1) % cfg.getCheckpointInterval() == 0;
 	}
 
 
-	private void drawWaypoints(final BufferedImage bi, final int frame, final TreeMap<Long, Point2D> wpMap) {
-		final Double waypointSize = cfg.getWaypointSize();
-		if (waypointSize == null || waypointSize.doubleValue() == 0.0 || wpMap.isEmpty()) {
-			return;
-		}
+	// package private so that batch service can share caches between jobs
+	TileCache createTileCache() throws UserException {
+		return cfg.getTileCacheDir() == null ? null
+				: new TileCache(cfg.getTileCacheDir(), cfg.getTileCacheSize() * 1024 * 1024, cfg.getTileCacheTtl());
+	}
 
-		final Graphics2D g2 = getGraphics(bi);
 
-		final long t2 = getTime(frame);
+	// package private so that benchmarks can measure rendering without encoding
+	FrameWriter createFrameWriter(final String frameFilePattern, final String ext, final boolean toImages, final int startFrame,
+			final int width, final int height, final ThreadFactory threadFactory) throws UserException {
+		final FrameWriter encodingFrameWriter = toImages
+				? new FileFrameWriter(frameFilePattern, ext, cfg.getFps(), startFrame, cfg.getEncoderThreads(), cfg.getCompressionQuality(), threadFactory)
+				: RawFrameWriter.isRawOutput(cfg.getOutput()) ? new RawFrameWriter(cfg.getOutput(), cfg.getFps(), width, height)
+				: new VideoFrameWriter(cfg.getOutput(), cfg.getFps(), startFrame, width, height);
 
+		// parallel file frame writer does not block the renderer by itself
+		return cfg.getFrameQueueSize() > 0 && !(toImages && cfg.getEncoderThreads() > 1)
+				? new AsyncFrameWriter(encodingFrameWriter, cfg.getFrameQueueSize(), threadFactory)
+				: encodingFrameWriter;
+	}
 
-		if (t2 >= wpMap.firstKey()) {
-			for (final Point2D p : wpMap.subMap(wpMap.firstKey(), t2).values()) {
-				g2.setColor(Color.white);
-				final Ellipse2D.Double marker = new Ellipse2D.Double(p.getX() - waypointSize / 2.0, p.getY() - waypointSize / 2.0, waypointSize, waypointSize);
-				g2.setStroke(new BasicStroke(1f, BasicStroke.CAP_ROUND, BasicStroke.JOIN_ROUND));
-				g2.fill(marker);
-				g2.setColor(Color.black);
-				g2.draw(marker);
 
-				printText(g2, ((NamedPoint) p).name, (float) p.getX() + 8f, (float) p.getY() + 4f);
+	private static void setProgress(final RenderingContext rc, final int index, final int count) {
+		rc.setProgress1((int) (100.0 * (index + 1) / count), "Rendering Frame: " + (index + 1) + "/" + count);
+	}
+
+
+	private boolean renderInParallel(final RenderingContext rc, final BufferedImage bi, final FrameWriter frameWriter,
+			final int fromOrdinal, final int toOrdinal, final Checkpoint checkpoint, final String checkpointKey,
+			final RenderMetrics metrics, final RenderMetrics.Recorder recorder) throws UserException {
+		final int threads = cfg.getThreads();
+		final boolean encodedOnWrite = !(frameWriter instanceof TimedFrameWriter);
+		// frames are identified by their ordinal among active frames
+		final FrameReorderBuffer reorderBuffer = new FrameReorderBuffer(fromOrdinal, threads * 2);
+		// painted track history is copied to pooled buffers which are passed to the frame writer and released by it;
+		// enough for frames in the reorder buffer, frames waiting for encoding and frames being handed over
+		final FrameBufferPool framePool = new FrameBufferPool(threads * 2 + cfg.getFrameQueueSize() + 4, bi.getWidth(), bi.getHeight());
+		// not bounded, the painter waits for space in the reorder buffer
+		final BlockingQueue<OverlayJob> jobQueue = new LinkedBlockingQueue<OverlayJob>();
+
+		final ExecutorService executor = Executors.newFixedThreadPool(threads + 1, metrics.newThreadFactory());
+		try {
+			executor.execute(new Runnable() {
+				@Override
+				public void run() {
+					// track history is painted only once, by this thread; overlays are painted to its copies in parallel
+					final RenderMetrics.Recorder threadRecorder = metrics.newRecorder();
+					final FrameRenderer frameRenderer = new FrameRenderer(bi, threadRecorder);
+					try {
+						if (checkpoint != null) {
+							frameRenderer.restore(checkpoint);
+						}
+						for (int ordinal = fromOrdinal; ordinal < toOrdinal; ordinal++) {
+							reorderBuffer.awaitSpace(ordinal);
+							final int frame = activeFrames.getFrame(ordinal);
+							final long start = System.nanoTime();
+							final boolean rendered = frameRenderer.renderHistory(frame);
+							final long paintTime = System.nanoTime() - start;
+							threadRecorder.add(RenderMetrics.Phase.PAINT, paintTime);
+							if (rendered) {
+								jobQueue.add(new OverlayJob(ordinal, frame, framePool.copyOf(bi), frameRenderer.takeFlashback(), paintTime));
+							} else {
+								reorderBuffer.put(ordinal, null);
+							}
+
+							if (isCheckpoint(ordinal, checkpointKey)) {
+								frameRenderer.saveCheckpoint(checkpointKey);
+							}
+						}
+					} catch (final InterruptedException e) {
+						// consumer waiting for a frame of this thread would wait forever
+						Thread.currentThread().interrupt();
+						reorderBuffer.fail(e);
+					} catch (final Throwable e) {
+						reorderBuffer.fail(e);
+					} finally {
+						for (int t = 0; t < threads; t++) {
+							jobQueue.add(OverlayJob.END);
+						}
+						frameRenderer.dispose();
+						threadRecorder.finish();
+					}
+				}
+			});
+
+			for (int t = 0; t < threads; t++) {
+				executor.execute(new Runnable() {
+					@Override
+					public void run() {
+						// frames are taken from the queue in ascending order, as the renderer requires
+						final RenderMetrics.Recorder threadRecorder = metrics.newRecorder();
+						// history raster is not painted by this renderer, only its size is used
+						final FrameRenderer frameRenderer = new FrameRenderer(bi, threadRecorder);
+						// pooled buffers are reused, so their graphics are too
+						final java.util.Map<FrameBuffer, Graphics2D> graphicsMap = new IdentityHashMap<FrameBuffer, Graphics2D>();
+						try {
+							for (OverlayJob job = jobQueue.take(); job != OverlayJob.END; job = jobQueue.take()) {
+								final long start = System.nanoTime();
+								Graphics2D g2 = graphicsMap.get(job.buffer);
+								if (g2 == null) {
+									g2 = createGraphics(job.buffer.getImage());
+									graphicsMap.put(job.buffer, g2);
+								}
+								frameRenderer.renderOverlays(g2, job.frame, job.flashback);
+								threadRecorder.addFrame(job.paintTime + System.nanoTime() - start);
+								reorderBuffer.put(job.ordinal, job.buffer);
+							}
+						} catch (final InterruptedException e) {
+							Thread.currentThread().interrupt();
+							reorderBuffer.fail(e);
+						} catch (final Throwable e) {
+							reorderBuffer.fail(e);
+						} finally {
+							for (final Graphics2D g2 : graphicsMap.values()) {
+								g2.dispose();
+							}
+							frameRenderer.dispose();
+							threadRecorder.finish();
+						}
+					}
+				});
+			}
+
+			for (int ordinal = fromOrdinal; ordinal < toOrdinal; ordinal++) {
+				if (rc.isCancelled1()) {
+					return false;
+				}
+
+				final FrameBuffer frame;
+				try {
+					frame = reorderBuffer.take(ordinal);
+				} catch (final InterruptedException e) {
+					Thread.currentThread().interrupt();
+					return false;
+				}
+
+				setProgress(rc, ordinal - fromOrdinal, toOrdinal - fromOrdinal);
+
+				if (frame != null) {
+					final long writeStart = System.nanoTime();
+					frameWriter.addFrame(frame);
+					recorder.addWrite(System.nanoTime() - writeStart, encodedOnWrite);
+				}
+			}
+
+			// renderers merge their metrics when they finish
+			executor.shutdown();
+			try {
+				executor.awaitTermination(Long.MAX_VALUE, TimeUnit.NANOSECONDS);
+			} catch (final InterruptedException e) {
+				Thread.currentThread().interrupt();
+				return false;
 			}
+		} finally {
+			executor.shutdownNow();
 		}
+
+		return true;
 	}
 
 
-	private static class NamedPoint extends Point2D.Double {
-		private static final long serialVersionUID = 4011941819652468006L;
-		String name;
+	/**
+	 * Frame with painted track history waiting for its overlays.
+	 */
+	private static final class OverlayJob {
+		// tells overlay painting thread to finish
+		static final OverlayJob END = new OverlayJob(-1, -1, null, 0f, 0L);
+
+		final int ordinal;
+		final int frame;
+		final FrameBuffer buffer;
+		final float flashback;
+		final long paintTime;
+
+		OverlayJob(final int ordinal, final int frame, final FrameBuffer buffer, final float flashback, final long paintTime) {
+			this.ordinal = ordinal;
+			this.frame = frame;
+			this.buffer = buffer;
+			this.flashback = flashback;
+			this.paintTime = paintTime;
+		}
 	}
 
 
-	private void toTimePointMap(final TreeMap<Long, Point2D> timePointMap, final int i, final List<LatLon> latLonList) throws UserException {
-		long forcedTime = 0;
+	private static Color[] createTailColors(final Color color) {
+		final float[] hsb = Color.RGBtoHSB(color.getRed(), color.getGreen(), color.getBlue(), new float[3]);
+		final Color[] tailColors = new Color[TAIL_COLOR_LEVELS];
+		for (int level = 0; level < TAIL_COLOR_LEVELS; level++) {
+			final float ratio = (float) level / (TAIL_COLOR_LEVELS - 1);
+			final Color c = Color.getHSBColor(hsb[0], hsb[1], (1f - ratio) * hsb[2]);
+			tailColors[level] = new Color(c.getRed(), c.getGreen(), c.getBlue(), (int) (ratio * (255 - color.getAlpha()) + color.getAlpha()));
+		}
+		return tailColors;
+	}
+
+
+	static Graphics2D createGraphics(final BufferedImage bi) {
+		final Graphics2D g2 = (Graphics2D) bi.getGraphics();
+		g2.setRenderingHint(RenderingHints.KEY_ANTIALIASING, RenderingHints.VALUE_ANTIALIAS_ON);
+		g2.setRenderingHint(RenderingHints.KEY_TEXT_ANTIALIASING, RenderingHints.VALUE_TEXT_ANTIALIAS_ON);
+		g2.setRenderingHint(RenderingHints.KEY_FRACTIONALMETRICS, RenderingHints.VALUE_FRACTIONALMETRICS_ON);
+		g2.setRenderingHint(RenderingHints.KEY_RENDERING, RenderingHints.VALUE_RENDER_QUALITY);
+		g2.setRenderingHint(RenderingHints.KEY_ALPHA_INTERPOLATION, RenderingHints.VALUE_ALPHA_INTERPOLATION_QUALITY);
+		g2.setRenderingHint(RenderingHints.KEY_COLOR_RENDERING, RenderingHints.VALUE_COLOR_RENDER_QUALITY);
+		return g2;
+	}
 
-		final TrackConfiguration trackConfiguration = cfg.getTrackConfigurationList().get(i);
 
-		final Double minLon = cfg.getMinLon();
-		final Double maxLon = cfg.getMaxLon();
-		final Double minLat = cfg.getMinLat();
-		final Double maxLat = cfg.getMaxLat();
+	private boolean isSkipped(final int frame) {
+		return !activeFrames.contains(frame);
+	}
 
-		if (minLon != null) {
-			minX = lonToX(minLon);
-		}
-		if (maxLon != null) {
-			maxX = lonToX(maxLon);
+
+	/**
+	 * @return frames whose time falls into some span of movement; all frames if idle parts are kept
+	 */
+	private FrameIntervals getActiveFrames(final int frames) {
+		final FrameIntervals.Builder builder = new FrameIntervals.Builder();
+		if (!cfg.isSkipIdle()) {
+			return builder.add(1, frames).build();
 		}
-		if (maxLat != null) {
-			minY = latToY(maxLat);
+
+		final double frameDuration = MS * speedup / cfg.getFps();
+		for (final Long[] span : spanList) {
+			// estimate frames from span times and then correct them for rounding in getTime
+			int from = (int) Math.min(frames, Math.max(1, Math.ceil((span[0] - minTime) / frameDuration)));
+			while (from > 1 && getTime(from - 1) >= span[0]) {
+				from--;
+			}
+			while (from < frames && getTime(from) < span[0]) {
+				from++;
+			}
+
+			int to = (int) Math.min(frames, Math.max(from, Math.floor((span[1] - minTime) / frameDuration) + 1));
+			while (to < frames && getTime(to) <= span[1]) {
+				to++;
+			}
+			while (to > from && getTime(to - 1) > span[1]) {
+				to--;
+			}
+
+			builder.add(from, to);
 		}
-		if (minLat != null) {
-			maxY = latToY(minLat);
+		return builder.build();
+	}
+
+
+	private boolean isFlashback() {
+		final Color flashbackColor = cfg.getFlashbackColor();
+		return flashbackColor.getAlpha() > 0 && cfg.getFlashbackDuration() != null && cfg.getFlashbackDuration() > 0;
+	}
+
+
+	private static Rectangle union(final List<Rectangle> rectList) {
+		final Rectangle union = new Rectangle(rectList.get(0));
+		for (final Rectangle rect : rectList) {
+			union.add(rect);
 		}
+		return union;
+	}
 
-		for (final LatLon latLon : latLonList) {
-			final double x = lonToX(latLon.getLon());
-			final double y = latToY(latLon.getLat());
 
-			if (minLon == null) {
-				minX = Math.min(x, minX);
+	/**
+	 * Reads and projects all input files in parallel.
+	 *
+	 * @return parsed tracks in order of track configurations or null if cancelled
+	 */
+	private List<ParsedTrack> parseTracks(final RenderingContext rc, final RenderMetrics metrics) throws UserException {
+		final List<TrackConfiguration> trackConfigurationList = cfg.getTrackConfigurationList();
+
+		final ExecutorService executor = Executors.newFixedThreadPool(Math.max(1, Math.min(cfg.getThreads(), trackConfigurationList.size())),
+				metrics.newThreadFactory());
+		try {
+			final List<Future<ParsedTrack>> futureList = new ArrayList<Future<ParsedTrack>>();
+			for (final TrackConfiguration trackConfiguration : trackConfigurationList) {
+				futureList.add(executor.submit(new Callable<ParsedTrack>() {
+					@Override
+					public ParsedTrack call() throws UserException {
+						final long start = System.nanoTime();
+						final RenderMetrics.Recorder trackRecorder = metrics.newRecorder();
+
+						final ParsedTrack parsedTrack = new ParsedTrack(trackConfiguration);
+						final ProjectedGpx projectedGpx = readGpx(trackConfiguration.getInputGpx(), trackRecorder);
+
+						final long projectStart = System.nanoTime();
+						for (final ProjectedGpx.Points points : projectedGpx.getPointsList()) {
+							final TimePoints.Builder timePointsBuilder = new TimePoints.Builder();
+							toTimePoints(timePointsBuilder, parsedTrack, points);
+							parsedTrack.timePointsList.add(timePointsBuilder.build());
+						}
+						parsedTrack.waypointList = projectedGpx.getWaypoints();
+						trackRecorder.add(RenderMetrics.Phase.PROJECT, System.nanoTime() - projectStart);
+
+						trackRecorder.finish();
+						parsedTrack.duration = (System.nanoTime() - start) / 1000000;
+						return parsedTrack;
+					}
+				}));
 			}
-			if (maxLat == null) {
-				minY = Math.min(y, minY);
+
+			final List<ParsedTrack> parsedTrackList = new ArrayList<ParsedTrack>();
+			for (final Future<ParsedTrack> future : futureList) {
+				if (rc.isCancelled1()) {
+					return null;
+				}
+
+				final ParsedTrack parsedTrack;
+				try {
+					parsedTrack = future.get();
+				} catch (final InterruptedException e) {
+					Thread.currentThread().interrupt();
+					return null;
+				} catch (final ExecutionException e) {
+					final Throwable cause = e.getCause();
+					if (cause instanceof UserException) {
+						throw (UserException) cause;
+					}
+					throw new RuntimeException("internal error when reading GPX file", cause);
+				}
+				parsedTrackList.add(parsedTrack);
+
+				rc.setProgress1((int) (100.0 * parsedTrackList.size() / futureList.size()),
+						"Read GPX File: " + parsedTrack.trackConfiguration.getInputGpx() + " (" + parsedTrack.duration + " ms)");
 			}
-			if (maxLon == null) {
-				maxX = Math.max(x, maxX);
+			return parsedTrackList;
+		} finally {
+			executor.shutdownNow();
+		}
+	}
+
+
+	/**
+	 * Reads and projects GPX file, using its .gpxbin file if enabled. Reading of .gpxbin file is recorded as parsing.
+	 */
+	private ProjectedGpx readGpx(final File inputGpx, final RenderMetrics.Recorder recorder) throws UserException {
+		final long start = System.nanoTime();
+
+		if (cfg.isGpxCache()) {
+			try {
+				final ProjectedGpx projectedGpx = ProjectedGpx.load(inputGpx);
+				if (projectedGpx != null) {
+					recorder.add(RenderMetrics.Phase.PARSE, System.nanoTime() - start);
+					return projectedGpx;
+				}
+			} catch (final IOException e) {
+				System.err.println("Can't read GPX cache of " + inputGpx + ": " + e.getMessage());
 			}
-			if (minLat == null) {
-				maxY = Math.max(y, maxY);
+		}
+
+		final GpxStreamReader gpxReader = GpxParser.readGpx(inputGpx);
+		final long projectStart = System.nanoTime();
+		recorder.add(RenderMetrics.Phase.PARSE, projectStart - start);
+
+		final ProjectedGpx projectedGpx = ProjectedGpx.project(gpxReader);
+		recorder.add(RenderMetrics.Phase.PROJECT, System.nanoTime() - projectStart);
+
+		if (cfg.isGpxCache()) {
+			try {
+				projectedGpx.save(inputGpx);
+			} catch (final IOException e) {
+				System.err.println("Can't write GPX cache of " + inputGpx + ": " + e.getMessage());
 			}
+		}
+
+		return projectedGpx;
+	}
+
+
+	private static final class ParsedTrack {
+		final TrackConfiguration trackConfiguration;
+		final List<TimePoints> timePointsList = new ArrayList<TimePoints>();
+		ProjectedGpx.Points waypointList;
+		double minX = Double.POSITIVE_INFINITY, maxX = Double.NEGATIVE_INFINITY, minY = Double.POSITIVE_INFINITY, maxY = Double.NEGATIVE_INFINITY;
+		long duration;
+
+		ParsedTrack(final TrackConfiguration trackConfiguration) {
+			this.trackConfiguration = trackConfiguration;
+		}
+	}
+
+
+	private static void toTimePoints(final TimePoints.Builder timePointsBuilder, final ParsedTrack parsedTrack, final ProjectedGpx.Points points) throws UserException {
+		long forcedTime = 0;
+
+		final TrackConfiguration trackConfiguration = parsedTrack.trackConfiguration;
+
+		for (int j = 0, n = points.size(); j < n; j++) {
+			final double x = points.getX(j);
+			final double y = points.getY(j);
+
+			parsedTrack.minX = Math.min(x, parsedTrack.minX);
+			parsedTrack.minY = Math.min(y, parsedTrack.minY);
+			parsedTrack.maxX = Math.max(x, parsedTrack.maxX);
+			parsedTrack.maxY = Math.max(y, parsedTrack.maxY);
 
 			long time;
 			final Long forcedPointInterval = trackConfiguration.getForcedPointInterval();
@@ -345,7 +842,7 @@ public class Renderer {
 				forcedTime += forcedPointInterval;
 				time = forcedTime;
 			} else {
-				time = latLon.getTime();
+				time = points.getTime(j);
 				if (time == Long.MIN_VALUE) {
 					throw new UserException("missing time for point; specify --forced-point-time-interval option");
 				}
@@ -355,195 +852,492 @@ public class Renderer {
 				time += trackConfiguration.getTimeOffset();
 			}
 
-			final Point2D point;
-			if (latLon instanceof Waypoint) {
-				final NamedPoint namedPoint = new NamedPoint();
-				namedPoint.setLocation(x, y);
-				namedPoint.name = ((Waypoint) latLon).getName();
-				point = namedPoint;
-			} else {
-				point = new Point2D.Double(x, y);
-			}
-
-			// hack to prevent overwriting existing (way)point with same time
-			long freeTime = time;
-			while (timePointMap.containsKey(freeTime)) {
-				freeTime++;
-			}
-			timePointMap.put(freeTime, point);
+			timePointsBuilder.add(time, x, y, points.getName(j));
 		}
 	}
 
 
-	private static double lonToX(final Double maxLon) {
-		return Math.toRadians(maxLon);
+	private long getTime(final int frame) {
+		return (long) Math.floor(minTime + frame / cfg.getFps() * MS * speedup);
 	}
 
 
-	private static double latToY(final double lat) {
-		return Math.log(Math.tan(Math.PI / 4 + Math.toRadians(lat) / 2));
-	}
+	/**
+	 * Paints frames of the animation; frames must be requested in ascending order. When rendering in parallel
+	 * one instance paints the track history and other instances paint overlays of different frames to its copies.
+	 * <p>
+	 * Track history is painted to persistent raster, transient overlays (tail, markers, texts and flashback)
+	 * to frame raster which is reused between frames. Before painting overlays of the next frame only regions
+	 * changed since the previous frame are restored from the persistent raster. Overlays which do not change
+	 * once drawn are drawn only once to overlay layers: reached waypoints under the markers, attribution over the markers and time.
+	 */
+	private final class FrameRenderer {
 
+		private final BufferedImage bi;
 
-	private void drawTime(final BufferedImage bi, final int frame) {
-		final String dateString = DATE_FORMAT.format(new Date(getTime(frame)));
-		printText(getGraphics(bi), dateString, bi.getWidth() - fontMetrics.stringWidth(dateString) - cfg.getMargin(),
-				bi.getHeight() - cfg.getMargin());
-	}
+		private final Graphics2D biGraphics;
 
+		private BufferedImage frameBi;
 
-	private void drawAttribution(final BufferedImage bi, final String attribution) {
-		printText(getGraphics(bi), attribution, cfg.getMargin(), bi.getHeight() - cfg.getMargin());
-	}
+		private Graphics2D frameGraphics;
 
+		// reached waypoints, drawn under markers
+		private final OverlayLayer overlay;
 
-	private void drawMarker(final BufferedImage bi, final int frame) {
-		if (cfg.getMarkerSize() == null || cfg.getMarkerSize().doubleValue() == 0.0) {
-			return;
+		// attribution, drawn over markers and time; null if texts are not drawn
+		private final OverlayLayer attributionOverlay;
+
+		// number of waypoints already drawn to the overlay layer
+		private int overlaidWaypoints;
+
+		// regions where frame raster differs from the persistent one
+		private final List<Rectangle> dirtyList = new ArrayList<Rectangle>();
+
+		private final DateFormat dateFormat = DateFormat.getDateTimeInstance(DateFormat.MEDIUM, DateFormat.MEDIUM);
+
+		private final Path2D.Double path = new Path2D.Double();
+
+		// index of the last point reached by the marker in every segment of every track; frames only move forward
+		private final int[][] markerCursors;
+
+		private int lastFrame;
+
+		private float skip = -1f;
+
+		private final RenderMetrics.Recorder recorder;
+
+
+		FrameRenderer(final BufferedImage bi, final RenderMetrics.Recorder recorder) {
+			this.bi = bi;
+			this.recorder = recorder;
+			biGraphics = createGraphics(bi);
+
+			overlay = new OverlayLayer(bi.getWidth(), bi.getHeight());
+
+			markerCursors = new int[timePointsListList.size()][];
+			for (int i = 0; i < markerCursors.length; i++) {
+				markerCursors[i] = new int[timePointsListList.get(i).size()];
+				Arrays.fill(markerCursors[i], -1);
+			}
+			if (font != null) {
+				attributionOverlay = new OverlayLayer(bi.getWidth(), bi.getHeight());
+				drawAttribution(attributionOverlay.getGraphics(), cfg.getAttribution());
+			} else {
+				attributionOverlay = null;
+			}
 		}
 
-		final Graphics2D g2 = getGraphics(bi);
 
-		final long t2 = getTime(frame);
+		/**
+		 * Continues from the state of the checkpoint; following frames must be after the checkpoint frame.
+		 */
+		void restore(final Checkpoint checkpoint) {
+			Utils.copyRect(checkpoint.getImage(), bi, new Rectangle(0, 0, bi.getWidth(), bi.getHeight()));
+			lastFrame = checkpoint.getFrame();
+			skip = checkpoint.getSkip();
+		}
 
-		final double markerSize = cfg.getMarkerSize();
 
-		final List<TrackConfiguration> trackConfigurationList = cfg.getTrackConfigurationList();
+		void saveCheckpoint(final String checkpointKey) {
+			try {
+				new Checkpoint(lastFrame, skip, bi).save(cfg.getOutput(), checkpointKey);
+			} catch (final IOException e) {
+				System.err.println("Can't write checkpoint: " + e.getMessage());
+			}
+		}
+
+
+		void dispose() {
+			biGraphics.dispose();
+			overlay.dispose();
+			if (attributionOverlay != null) {
+				attributionOverlay.dispose();
+			}
+			if (frameGraphics != null) {
+				frameGraphics.dispose();
+			}
+		}
+
+
+		/**
+		 * @return rendered frame or null if frame is idle and should be skipped
+		 */
+		BufferedImage renderFrame(final int frame) {
+			final long start = System.nanoTime();
+
+			if (!renderHistory(frame)) {
+				recorder.add(RenderMetrics.Phase.PAINT, System.nanoTime() - start);
+				return null;
+			}
 
-		int i = 0;
-		outer: for (final List<TreeMap<Long, Point2D>> timePointMapList : timePointMapListList) {
-			final TrackConfiguration trackConfiguration = trackConfigurationList.get(i++);
-			for (final TreeMap<Long, Point2D> timePointMap : timePointMapList) {
-				final Entry<Long, Point2D> ceilingEntry = timePointMap.ceilingEntry(t2);
-				final Entry<Long, Point2D> floorEntry = timePointMap.floorEntry(t2);
-				if (floorEntry == null) {
-					continue;
+			if (frameBi == null) {
+				frameBi = Utils.deepCopy(bi);
+				frameGraphics = createGraphics(frameBi);
+			} else if (dirtyList.size() > MAX_DIRTY_REGIONS) {
+				Utils.copyRect(bi, frameBi, union(dirtyList));
+			} else {
+				for (final Rectangle rect : dirtyList) {
+					Utils.copyRect(bi, frameBi, rect);
 				}
+			}
+			dirtyList.clear();
 
-				final Point2D p = floorEntry.getValue();
-				if (t2 - floorEntry.getKey() <= cfg.getTailDuration()) { // TODO make configurable
-					g2.setColor(ceilingEntry == null ? Color.white : trackConfiguration.getColor());
-					final Ellipse2D.Double marker = new Ellipse2D.Double(
-							p.getX() - markerSize / 2.0,
-							p.getY() - markerSize / 2.0,
-							markerSize,
-							markerSize);
-					g2.setStroke(new BasicStroke(1f));
-					g2.fill(marker);
-					g2.setColor(Color.black);
-					g2.draw(marker);
-
-					final String label = trackConfiguration.getLabel();
-					if (!label.isEmpty()) {
-						printText(g2, label, (float) p.getX() + 8f, (float) p.getY() + 4f);
-					}
+			recorder.add(RenderMetrics.Phase.PAINT, System.nanoTime() - start);
+
+			paintOverlays(frameGraphics, frame, takeFlashback());
+
+			recorder.addFrame(System.nanoTime() - start);
+
+			return frameBi;
+		}
+
+
+		/**
+		 * Paints the track history up to the given frame to the persistent raster.
+		 *
+		 * @return false if frame is idle and should be skipped
+		 */
+		boolean renderHistory(final int frame) {
+			while (lastFrame < frame - 1) {
+				final int nextActiveFrame = activeFrames.ceiling(lastFrame + 1);
+				if (nextActiveFrame > lastFrame + 1) {
+					// jump over idle frames
+					skip = 1f;
+					lastFrame = Math.min(nextActiveFrame, frame) - 1;
+				} else {
+					advance(++lastFrame);
 				}
+			}
+			lastFrame = frame;
 
-				continue outer;
+			if (isSkipped(frame)) {
+				skip = 1f;
+				return false;
 			}
+
+			paint(biGraphics, frame, 0);
+			return true;
 		}
-	}
 
 
-	private void paint(final BufferedImage bi, final int frame, final long backTime) {
-		final Graphics2D g2 = getGraphics(bi);
+		/**
+		 * Must be called once for every rendered frame after {@link #renderHistory(int)}.
+		 *
+		 * @return opacity of the flashback of the frame or 0 if there is none
+		 */
+		float takeFlashback() {
+			if (skip > 0f && isFlashback()) {
+				final float flashback = skip;
+				skip -= 1000f / cfg.getFlashbackDuration() / cfg.getFps();
+				return flashback;
+			}
+			return 0f;
+		}
 
-		final long time = getTime(frame);
 
-		final List<TrackConfiguration> trackConfigurationList = cfg.getTrackConfigurationList();
+		/**
+		 * Paints overlays of the frame to a copy of the track history painted by another renderer.
+		 * Frames must be requested in ascending order, but they need not be consecutive.
+		 */
+		void renderOverlays(final Graphics2D g2, final int frame, final float flashback) {
+			paintOverlays(g2, frame, flashback);
+			// the whole copy is replaced for the next frame
+			dirtyList.clear();
+		}
 
-		int i = 0;
-		for (final List<TreeMap<Long, Point2D>> timePointMapList : timePointMapListList) {
-			final TrackConfiguration trackConfiguration = trackConfigurationList.get(i++);
 
-			for (final TreeMap<Long, Point2D> timePointMap : timePointMapList) {
-				g2.setStroke(new BasicStroke(trackConfiguration.getLineWidth(), BasicStroke.CAP_ROUND, BasicStroke.JOIN_ROUND));
+		private void paintOverlays(final Graphics2D g2, final int frame, final float flashback) {
+			final long tailStart = System.nanoTime();
 
-				final Long toTime = timePointMap.floorKey(time);
+			paint(g2, frame, cfg.getTailDuration());
 
-				if (toTime == null) {
-					continue;
-				}
+			final long overlayStart = System.nanoTime();
+			recorder.add(RenderMetrics.Phase.TAIL, overlayStart - tailStart);
 
-				Point2D prevPoint = null;
+			drawWaypoints(overlay.getGraphics(), frame);
 
-				if (backTime == 0) {
-					final long prevTime =  getTime(frame - 1);
-					Long fromTime = timePointMap.floorKey(prevTime);
-					if (fromTime == null) {
-						// try ceiling because we may be at beginning
-						fromTime = timePointMap.ceilingKey(prevTime);
-					}
-					if (fromTime == null) {
+			overlay.drawTo(g2, dirtyList);
+
+			final long markersStart = System.nanoTime();
+
+			drawMarker(g2, frame);
+
+			final long textStart = System.nanoTime();
+			recorder.add(RenderMetrics.Phase.MARKERS, textStart - markersStart);
+
+			if (font != null) {
+				drawTime(g2, frame);
+			}
+
+			final long flashbackStart = System.nanoTime();
+			recorder.add(RenderMetrics.Phase.TEXT, flashbackStart - textStart);
+
+			if (attributionOverlay != null) {
+				attributionOverlay.drawTo(g2, dirtyList);
+			}
+
+			if (flashback > 0f) {
+				final Color flashbackColor = cfg.getFlashbackColor();
+				g2.setColor(new Color(flashbackColor.getRed(), flashbackColor.getGreen(), flashbackColor.getBlue(), (int) (flashbackColor.getAlpha() * flashback)));
+				g2.fillRect(0, 0, bi.getWidth(), bi.getHeight());
+				dirtyList.add(new Rectangle(0, 0, bi.getWidth(), bi.getHeight()));
+			}
+
+			// attribution and flashback are overlays over everything else
+			recorder.add(RenderMetrics.Phase.OVERLAY, markersStart - overlayStart + System.nanoTime() - flashbackStart);
+		}
+
+
+		private void markDirty(final double minX, final double minY, final double maxX, final double maxY, final double padding) {
+			dirtyList.add(padded(minX, minY, maxX, maxY, padding));
+		}
+
+
+		private void markDirty(final Rectangle2D bounds, final double padding) {
+			dirtyList.add(padded(bounds, padding));
+		}
+
+
+		private Rectangle padded(final double minX, final double minY, final double maxX, final double maxY, final double padding) {
+			final int x = (int) Math.floor(minX - padding);
+			final int y = (int) Math.floor(minY - padding);
+			return new Rectangle(x, y, (int) Math.ceil(maxX + padding) - x + 1, (int) Math.ceil(maxY + padding) - y + 1);
+		}
+
+
+		private Rectangle padded(final Rectangle2D bounds, final double padding) {
+			return padded(bounds.getMinX(), bounds.getMinY(), bounds.getMaxX(), bounds.getMaxY(), padding);
+		}
+
+
+		// paints only the track history of the frame, keeping the same state as rendering it would
+		private void advance(final int frame) {
+			if (isSkipped(frame)) {
+				skip = 1f;
+				return;
+			}
+
+			paint(biGraphics, frame, 0);
+
+			takeFlashback();
+		}
+
+
+		// draws waypoints reached since the previous frame to the overlay layer
+		private void drawWaypoints(final Graphics2D g2, final int frame) {
+			final Double waypointSize = cfg.getWaypointSize();
+			if (waypointSize == null || waypointSize.doubleValue() == 0.0 || waypoints.isEmpty()) {
+				return;
+			}
+
+			final long t2 = getTime(frame);
+
+			for (final int n = waypoints.ceilingIndex(t2); overlaidWaypoints < n; overlaidWaypoints++) {
+				final int i = overlaidWaypoints;
+				final double x = waypoints.getX(i);
+				final double y = waypoints.getY(i);
+				g2.setColor(Color.white);
+				final Ellipse2D.Double marker = new Ellipse2D.Double(x - waypointSize / 2.0, y - waypointSize / 2.0, waypointSize, waypointSize);
+				g2.setStroke(new BasicStroke(1f, BasicStroke.CAP_ROUND, BasicStroke.JOIN_ROUND));
+				g2.fill(marker);
+				g2.setColor(Color.black);
+				g2.draw(marker);
+				overlay.markOccupied(padded(marker.getBounds2D(), DIRTY_PADDING));
+
+				overlay.markOccupied(printText(g2, waypoints.getName(i), (float) x + 8f, (float) y + 4f));
+			}
+		}
+
+
+		private void drawTime(final Graphics2D g2, final int frame) {
+			// time changes every frame, so it is drawn from sprites of single characters
+			final String dateString = dateFormat.format(new Date(getTime(frame)));
+			addDirty(textSprites.drawGlyphs(g2, dateString, bi.getWidth() - fontMetrics.stringWidth(dateString) - cfg.getMargin(),
+					bi.getHeight() - cfg.getMargin()));
+		}
+
+
+		private void drawAttribution(final Graphics2D g2, final String attribution) {
+			attributionOverlay.markOccupied(printText(g2, attribution, cfg.getMargin(), bi.getHeight() - cfg.getMargin()));
+		}
+
+
+		private void drawMarker(final Graphics2D g2, final int frame) {
+			if (cfg.getMarkerSize() == null || cfg.getMarkerSize().doubleValue() == 0.0) {
+				return;
+			}
+
+			final long t2 = getTime(frame);
+
+			final double markerSize = cfg.getMarkerSize();
+
+			final List<TrackConfiguration> trackConfigurationList = cfg.getTrackConfigurationList();
+
+			for (int i = 0; i < timePointsListList.size(); i++) {
+				final TrackConfiguration trackConfiguration = trackConfigurationList.get(i);
+				final List<TimePoints> timePointsList = timePointsListList.get(i);
+				final int[] cursors = markerCursors[i];
+				for (int k = 0; k < cursors.length; k++) {
+					final TimePoints timePoints = timePointsList.get(k);
+					final int floorIndex = timePoints.floorIndexFrom(cursors[k], t2);
+					cursors[k] = floorIndex;
+					if (floorIndex == -1) {
 						continue;
 					}
 
-					g2.setPaint(trackConfiguration.getColor());
-					for (final Entry<Long, Point2D> entry: timePointMap.subMap(fromTime, true, toTime, true).entrySet()) {
-						if (prevPoint != null) {
-							g2.draw(new Line2D.Double(prevPoint, entry.getValue()));
+					// marker moves smoothly between recorded points
+					final double ratio = timePoints.getRatio(floorIndex, t2);
+					final double x = timePoints.getX(floorIndex, ratio);
+					final double y = timePoints.getY(floorIndex, ratio);
+					if (t2 - timePoints.getTime(floorIndex) <= cfg.getTailDuration()) { // TODO make configurable
+						g2.setColor(t2 > timePoints.getLastTime() ? Color.white : trackConfiguration.getColor());
+						final Ellipse2D.Double marker = new Ellipse2D.Double(
+								x - markerSize / 2.0,
+								y - markerSize / 2.0,
+								markerSize,
+								markerSize);
+						g2.setStroke(new BasicStroke(1f));
+						g2.fill(marker);
+						g2.setColor(Color.black);
+						g2.draw(marker);
+						markDirty(marker.getBounds2D(), DIRTY_PADDING);
+
+						final String label = trackConfiguration.getLabel();
+						if (!label.isEmpty()) {
+							addDirty(printText(g2, label, (float) x + 8f, (float) y + 4f));
 						}
-						prevPoint = entry.getValue();
 					}
-				} else {
-					for (final Entry<Long, Point2D> entry: timePointMap.subMap(toTime - backTime, true, toTime, true).entrySet()) {
-						if (prevPoint != null) {
-							final float ratio = (backTime - time + entry.getKey()) * 1f / backTime;
+
+					break;
+				}
+			}
+		}
+
+
+		private void paint(final Graphics2D g2, final int frame, final long backTime) {
+			final long time = getTime(frame);
+
+			final List<TrackConfiguration> trackConfigurationList = cfg.getTrackConfigurationList();
+
+			int i = 0;
+			for (final List<TimePoints> timePointsList : pathPointsListList) {
+				final Color[] tailColors = tailColorsList.get(i);
+				g2.setStroke(strokeList.get(i));
+				final TrackConfiguration trackConfiguration = trackConfigurationList.get(i++);
+
+				// new segments of all track segments are drawn as one path
+				path.reset();
+
+				for (final TimePoints timePoints : timePointsList) {
+					final int toIndex = timePoints.floorIndex(time);
+
+					if (toIndex == -1) {
+						continue;
+					}
+
+					double minX = Double.POSITIVE_INFINITY, maxX = Double.NEGATIVE_INFINITY, minY = Double.POSITIVE_INFINITY, maxY = Double.NEGATIVE_INFINITY;
+
+					if (backTime == 0) {
+						final long prevTime =  getTime(frame - 1);
+						int fromIndex = timePoints.floorIndex(prevTime);
+						if (fromIndex == -1) {
+							// try ceiling because we may be at beginning
+							fromIndex = timePoints.ceilingIndex(prevTime);
+						}
+						if (fromIndex == timePoints.size()) {
+							continue;
+						}
+
+						if (fromIndex < toIndex) {
+							path.moveTo(timePoints.getX(fromIndex), timePoints.getY(fromIndex));
+						}
+						for (int j = fromIndex + 1; j <= toIndex; j++) {
+							final double x1 = timePoints.getX(j - 1), y1 = timePoints.getY(j - 1);
+							final double x2 = timePoints.getX(j), y2 = timePoints.getY(j);
+							path.lineTo(x2, y2);
+							minX = Math.min(minX, Math.min(x1, x2));
+							maxX = Math.max(maxX, Math.max(x1, x2));
+							minY = Math.min(minY, Math.min(y1, y2));
+							maxY = Math.max(maxY, Math.max(y1, y2));
+						}
+					} else {
+						// consecutive segments of the same color are drawn as one path
+						int pathLevel = -1;
+						for (int j = timePoints.ceilingIndex(timePoints.getTime(toIndex) - backTime) + 1; j <= toIndex; j++) {
+							final float ratio = (backTime - time + timePoints.getTime(j)) * 1f / backTime;
 							if (ratio > 0) {
-								final Color color = trackConfiguration.getColor();
-								final float[] hsb = Color.RGBtoHSB(color.getRed(), color.getGreen(), color.getBlue(), new float[3]);
-								final Color c = Color.getHSBColor(hsb[0], hsb[1], (1f - ratio) * hsb[2]);
-								g2.setPaint(new Color(c.getRed(), c.getGreen(), c.getBlue(), (int) (ratio * (255 - color.getAlpha()) + color.getAlpha())));
-								g2.draw(new Line2D.Double(prevPoint, entry.getValue()));
+								final double x1 = timePoints.getX(j - 1), y1 = timePoints.getY(j - 1);
+								final double x2 = timePoints.getX(j), y2 = timePoints.getY(j);
+								final int level = (int) (ratio * (TAIL_COLOR_LEVELS - 1) + 0.5f);
+								if (level != pathLevel) {
+									if (pathLevel != -1) {
+										g2.setPaint(tailColors[pathLevel]);
+										g2.draw(path);
+									}
+									path.reset();
+									path.moveTo(x1, y1);
+									pathLevel = level;
+								}
+								path.lineTo(x2, y2);
+								minX = Math.min(minX, Math.min(x1, x2));
+								maxX = Math.max(maxX, Math.max(x1, x2));
+								minY = Math.min(minY, Math.min(y1, y2));
+								maxY = Math.max(maxY, Math.max(y1, y2));
 							}
 						}
-						prevPoint = entry.getValue();
+						if (pathLevel != -1) {
+							g2.setPaint(tailColors[pathLevel]);
+							g2.draw(path);
+						}
 					}
+
+					if (minX <= maxX) {
+						markDirty(minX, minY, maxX, maxY, trackConfiguration.getLineWidth() / 2.0 + DIRTY_PADDING);
+					}
+				}
+
+				if (backTime == 0 && path.getCurrentPoint() != null) {
+					g2.setPaint(trackConfiguration.getColor());
+					g2.draw(path);
 				}
 			}
 		}
-	}
 
 
-	private long getTime(final int frame) {
-		return (long) Math.floor(minTime + frame / cfg.getFps() * MS * speedup);
-	}
+		/**
+		 * @return bounds of changed pixels or null if nothing was drawn
+		 */
+		private Rectangle printText(final Graphics2D g2, final String text, final float x, final float y) {
+			if (text == null || textSprites == null) {
+				return null;
+			}
 
+			Rectangle bounds = null;
+			final String[] lines = text.split("\n");
+			final int height = textSprites.getLineHeight();
+			float yy = y - (lines.length - 1) * height;
+			for (final String line : lines) {
+				if (!line.isEmpty()) {
+					final Rectangle rect = textSprites.drawText(g2, line, x, yy);
+					if (bounds == null) {
+						bounds = rect;
+					} else if (rect != null) {
+						bounds.add(rect);
+					}
+				}
 
-	private void printText(final Graphics2D g2, final String text, final float x, final float y) {
-		final FontRenderContext frc = g2.getFontRenderContext();
-		g2.setStroke(new BasicStroke(3f, BasicStroke.CAP_ROUND, BasicStroke.JOIN_ROUND));
-		final int height = g2.getFontMetrics(font).getHeight();
+				yy += height;
+			}
+			return bounds;
+		}
 
-		final String[] lines = text == null ? new String[0] : text.split("\n");
-		float yy = y - (lines.length - 1) * height;
-		for (final String line : lines) {
-			if (!line.isEmpty()) {
-				final TextLayout tl = new TextLayout(line, font, frc);
-				final Shape sha = tl.getOutline(AffineTransform.getTranslateInstance(x, yy));
-				g2.setColor(Color.white);
-				g2.fill(sha);
-				g2.draw(sha);
 
-				g2.setFont(font);
-				g2.setColor(Color.black);
-				g2.drawString(line, x, yy);
+		private void addDirty(final Rectangle rect) {
+			if (rect != null) {
+				dirtyList.add(rect);
 			}
-
-			yy += height;
 		}
-	}
-
 
-	private Graphics2D getGraphics(final BufferedImage bi) {
-		final Graphics2D g2 = (Graphics2D) bi.getGraphics();
-		g2.setRenderingHint(RenderingHints.KEY_ANTIALIASING, RenderingHints.VALUE_ANTIALIAS_ON);
-		g2.setRenderingHint(RenderingHints.KEY_TEXT_ANTIALIASING, RenderingHints.VALUE_TEXT_ANTIALIAS_ON);
-		g2.setRenderingHint(RenderingHints.KEY_FRACTIONALMETRICS, RenderingHints.VALUE_FRACTIONALMETRICS_ON);
-		g2.setRenderingHint(RenderingHints.KEY_RENDERING, RenderingHints.VALUE_RENDER_QUALITY);
-		g2.setRenderingHint(RenderingHints.KEY_ALPHA_INTERPOLATION, RenderingHints.VALUE_ALPHA_INTERPOLATION_QUALITY);
-		g2.setRenderingHint(RenderingHints.KEY_COLOR_RENDERING, RenderingHints.VALUE_COLOR_RENDER_QUALITY);
-		return g2;
 	}
 
 }
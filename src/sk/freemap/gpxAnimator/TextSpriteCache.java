@@ -0,0 +1,246 @@
+/*
+ *  Copyright 2013 Martin Ždila, Freemap Slovakia
+ *  Licensed under the Apache License, Version 2.0 (the "License");
+ *  you may not use this file except in compliance with the License.
+ *  You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *  Unless required by applicable law or agreed to in writing, software
+ *  distributed under the License is distributed on an "AS IS" BASIS,
+ *  WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *  See the License for the specific language governing permissions and
+ *  limitations under the License.
+ */
+package sk.freemap.gpxAnimator;
+
+import java.awt.BasicStroke;
+import java.awt.Color;
+import java.awt.Font;
+import java.awt.Graphics2D;
+import java.awt.Rectangle;
+import java.awt.Shape;
+import java.awt.font.FontRenderContext;
+import java.awt.font.TextLayout;
+import java.awt.geom.AffineTransform;
+import java.awt.image.BufferedImage;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicReferenceArray;
+
+/**
+ * Pre-rendered texts with white halo. Texts are rendered once for each subpixel position and then only copied
+ * to frames. Texts changing every frame are drawn from per-character sprites. Sprites are shared by all threads.
+ */
+final class TextSpriteCache {
+
+	// subpixel positions per pixel in each direction
+	private static final int SUBPIXEL_STEPS = 4;
+
+	private static final BasicStroke HALO_STROKE = new BasicStroke(3f, BasicStroke.CAP_ROUND, BasicStroke.JOIN_ROUND);
+
+	private static final int HALO = 1;
+
+	private static final int GLYPHS = 2;
+
+	private static final int[] GLYPH_LAYERS = { HALO, GLYPHS };
+
+	// characters with sprites in the glyph atlas
+	private static final int ATLAS_CHARS = 128;
+
+	private final Font font;
+
+	private final FontRenderContext frc;
+
+	private final int lineHeight;
+
+	private final ConcurrentHashMap<Key, Sprite> spriteMap = new ConcurrentHashMap<Key, Sprite>();
+
+	// sprites of single characters by layer, subpixel position and character; filled lazily
+	private final AtomicReferenceArray<Sprite> glyphAtlas = new AtomicReferenceArray<Sprite>(GLYPH_LAYERS.length * SUBPIXEL_STEPS * SUBPIXEL_STEPS * ATLAS_CHARS);
+
+
+	TextSpriteCache(final Font font) {
+		this.font = font;
+
+		final Graphics2D g2 = Renderer.createGraphics(new BufferedImage(1, 1, BufferedImage.TYPE_INT_ARGB));
+		frc = g2.getFontRenderContext();
+		lineHeight = g2.getFontMetrics(font).getHeight();
+		g2.dispose();
+	}
+
+
+	int getLineHeight() {
+		return lineHeight;
+	}
+
+
+	/**
+	 * Draws single line of text with halo.
+	 *
+	 * @return bounds of changed pixels or null if nothing was drawn
+	 */
+	Rectangle drawText(final Graphics2D g2, final String text, final float x, final float y) {
+		final int ix = (int) Math.floor(x);
+		final int iy = (int) Math.floor(y);
+		final int phaseX = phase(x - ix);
+		final int phaseY = phase(y - iy);
+		final Sprite sprite = getSprite(text, HALO | GLYPHS, phaseX, phaseY);
+		return sprite.draw(g2, ix + phaseX / SUBPIXEL_STEPS, iy + phaseY / SUBPIXEL_STEPS);
+	}
+
+
+	/**
+	 * Draws single line of text with halo character by character. Halos of all characters are drawn first
+	 * so that they do not cover neighbouring characters.
+	 *
+	 * @return bounds of changed pixels or null if nothing was drawn
+	 */
+	Rectangle drawGlyphs(final Graphics2D g2, final String text, final float x, final float y) {
+		Rectangle bounds = null;
+		final int iy = (int) Math.floor(y);
+		final int phaseY = phase(y - iy);
+		for (int l = 0; l < GLYPH_LAYERS.length; l++) {
+			float cx = x;
+			for (int i = 0; i < text.length(); i++) {
+				final int ix = (int) Math.floor(cx);
+				final int phaseX = phase(cx - ix);
+				final Sprite sprite = getGlyphSprite(text.charAt(i), l, phaseX, phaseY);
+				final Rectangle rect = sprite.draw(g2, ix + phaseX / SUBPIXEL_STEPS, iy + phaseY / SUBPIXEL_STEPS);
+				if (rect != null) {
+					if (bounds == null) {
+						bounds = rect;
+					} else {
+						bounds.add(rect);
+					}
+				}
+				cx += sprite.advance;
+			}
+		}
+		return bounds;
+	}
+
+
+	// subpixel offset quantized to 0..SUBPIXEL_STEPS; SUBPIXEL_STEPS means next pixel
+	private static int phase(final float fraction) {
+		return Math.round(fraction * SUBPIXEL_STEPS);
+	}
+
+
+	private Sprite getGlyphSprite(final char c, final int layerIndex, final int phaseX, final int phaseY) {
+		if (c >= ATLAS_CHARS) {
+			return getSprite(String.valueOf(c), GLYPH_LAYERS[layerIndex], phaseX, phaseY);
+		}
+
+		final int index = ((layerIndex * SUBPIXEL_STEPS + phaseX % SUBPIXEL_STEPS) * SUBPIXEL_STEPS + phaseY % SUBPIXEL_STEPS) * ATLAS_CHARS + c;
+		final Sprite sprite = glyphAtlas.get(index);
+		if (sprite != null) {
+			return sprite;
+		}
+		glyphAtlas.compareAndSet(index, null, createSprite(String.valueOf(c), GLYPH_LAYERS[layerIndex],
+				(float) (phaseX % SUBPIXEL_STEPS) / SUBPIXEL_STEPS, (float) (phaseY % SUBPIXEL_STEPS) / SUBPIXEL_STEPS));
+		return glyphAtlas.get(index);
+	}
+
+
+	private Sprite getSprite(final String text, final int layers, final int phaseX, final int phaseY) {
+		final Key key = new Key(text, layers, phaseX % SUBPIXEL_STEPS, phaseY % SUBPIXEL_STEPS);
+		Sprite sprite = spriteMap.get(key);
+		if (sprite == null) {
+			sprite = createSprite(text, layers, (float) key.phaseX / SUBPIXEL_STEPS, (float) key.phaseY / SUBPIXEL_STEPS);
+			final Sprite existing = spriteMap.putIfAbsent(key, sprite);
+			if (existing != null) {
+				sprite = existing;
+			}
+		}
+		return sprite;
+	}
+
+
+	private Sprite createSprite(final String text, final int layers, final float x, final float y) {
+		final TextLayout tl = new TextLayout(text, font, frc);
+
+		final Shape outline = tl.getOutline(AffineTransform.getTranslateInstance(x, y));
+		final Rectangle bounds = outline.getBounds();
+		if (bounds.isEmpty()) {
+			return new Sprite(null, 0, 0, tl.getAdvance());
+		}
+
+		// room for halo and antialiasing
+		bounds.grow(4, 4);
+
+		final BufferedImage image = new BufferedImage(bounds.width, bounds.height, BufferedImage.TYPE_INT_ARGB);
+		final Graphics2D g2 = Renderer.createGraphics(image);
+		g2.translate(-bounds.x, -bounds.y);
+
+		if ((layers & HALO) != 0) {
+			g2.setStroke(HALO_STROKE);
+			g2.setColor(Color.white);
+			g2.fill(outline);
+			g2.draw(outline);
+		}
+
+		if ((layers & GLYPHS) != 0) {
+			g2.setFont(font);
+			g2.setColor(Color.black);
+			g2.drawString(text, x, y);
+		}
+
+		g2.dispose();
+
+		return new Sprite(image, bounds.x, bounds.y, tl.getAdvance());
+	}
+
+
+	private static final class Sprite {
+		// null if there is nothing to draw
+		private final BufferedImage image;
+		private final int x;
+		private final int y;
+		private final float advance;
+
+		Sprite(final BufferedImage image, final int x, final int y, final float advance) {
+			this.image = image;
+			this.x = x;
+			this.y = y;
+			this.advance = advance;
+		}
+
+		Rectangle draw(final Graphics2D g2, final int ix, final int iy) {
+			if (image == null) {
+				return null;
+			}
+			g2.drawImage(image, ix + x, iy + y, null);
+			return new Rectangle(ix + x, iy + y, image.getWidth(), image.getHeight());
+		}
+	}
+
+
+	private static final class Key {
+		private final String text;
+		private final int layers;
+		private final int phaseX;
+		private final int phaseY;
+
+		Key(final String text, final int layers, final int phaseX, final int phaseY) {
+			this.text = text;
+			this.layers = layers;
+			this.phaseX = phaseX;
+			this.phaseY = phaseY;
+		}
+
+		@Override
+		public int hashCode() {
+			return ((text.hashCode() * 31 + layers) * 31 + phaseX) * 31 + phaseY;
+		}
+
+		@Override
+		public boolean equals(final Object obj) {
+			if (!(obj instanceof Key)) {
+				return false;
+			}
+			final Key other = (Key) obj;
+			return text.equals(other.text) && layers == other.layers && phaseX == other.phaseX && phaseY == other.phaseY;
+		}
+	}
+
+}
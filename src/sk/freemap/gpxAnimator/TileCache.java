@@ -0,0 +1,206 @@
+/*
+ *  Copyright 2013 Martin Ždila, Freemap Slovakia
+ *  Licensed under the Apache License, Version 2.0 (the "License");
+ *  you may not use this file except in compliance with the License.
+ *  You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *  Unless required by applicable law or agreed to in writing, software
+ *  distributed under the License is distributed on an "AS IS" BASIS,
+ *  WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *  See the License for the specific language governing permissions and
+ *  limitations under the License.
+ */
+package sk.freemap.gpxAnimator;
+
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.UnsupportedEncodingException;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.Arrays;
+import java.util.Comparator;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.Map.Entry;
+
+/**
+ * Disk cache of downloaded map tiles. Tiles are stored in files named by hash of the tile URL,
+ * least recently used tiles are evicted when the cache exceeds its size.
+ */
+final class TileCache {
+
+	private static final String SUFFIX = ".tile";
+
+	private static final String TMP_PREFIX = "tile";
+
+	private static final String TMP_SUFFIX = ".tmp";
+
+	// younger temporary files may be just written by another process using the same directory
+	private static final long STALE_TMP_AGE = 60L * 60 * 1000;
+
+	private final File dir;
+
+	private final long maxSize;
+
+	private final Long ttl;
+
+	// file name -> file size, in access order
+	private final LinkedHashMap<String, Long> index = new LinkedHashMap<String, Long>(16, 0.75f, true);
+
+	private long size;
+
+	private int hits;
+
+	private int misses;
+
+
+	/**
+	 * @param maxSize maximal size of the cache in bytes
+	 * @param ttl time in milliseconds after which cached tile is downloaded again; null if tiles never expire
+	 */
+	TileCache(final File dir, final long maxSize, final Long ttl) throws UserException {
+		if (!dir.isDirectory() && !dir.mkdirs()) {
+			throw new UserException("can't create tile cache directory " + dir);
+		}
+
+		this.dir = dir;
+		this.maxSize = maxSize;
+		this.ttl = ttl;
+
+		final File[] files = dir.listFiles();
+		Arrays.sort(files, new Comparator<File>() {
+			@Override
+			public int compare(final File o1, final File o2) {
+				final long m1 = o1.lastModified();
+				final long m2 = o2.lastModified();
+				return m1 < m2 ? -1 : m1 == m2 ? 0 : 1;
+			}
+		});
+
+		final long now = System.currentTimeMillis();
+		for (final File file : files) {
+			final String name = file.getName();
+			if (name.endsWith(SUFFIX)) {
+				index.put(name, file.length());
+				size += file.length();
+			} else if (name.startsWith(TMP_PREFIX) && name.endsWith(TMP_SUFFIX) && now - file.lastModified() > STALE_TMP_AGE) {
+				// left by a process which was killed while storing a tile
+				file.delete();
+			}
+		}
+	}
+
+
+	/**
+	 * @return cached tile data or null if tile is not cached or has expired
+	 */
+	byte[] get(final String url) {
+		final String name = toName(url);
+
+		synchronized (this) {
+			if (index.get(name) == null) {
+				misses++;
+				return null;
+			}
+		}
+
+		final File file = new File(dir, name);
+		try {
+			final DataInputStream dis = new DataInputStream(new FileInputStream(file));
+			try {
+				final long created = dis.readLong();
+				if (ttl == null || System.currentTimeMillis() - created <= ttl) {
+					final byte[] data = new byte[(int) file.length() - 8];
+					dis.readFully(data);
+					file.setLastModified(System.currentTimeMillis());
+
+					synchronized (this) {
+						hits++;
+					}
+					return data;
+				}
+			} finally {
+				dis.close();
+			}
+		} catch (final IOException e) {
+			// treat unreadable tile as missing
+		}
+
+		synchronized (this) {
+			misses++;
+		}
+		return null;
+	}
+
+
+	void put(final String url, final byte[] data) throws IOException {
+		final String name = toName(url);
+		final File file = new File(dir, name);
+		final File tmpFile = File.createTempFile(TMP_PREFIX, TMP_SUFFIX, dir);
+
+		try {
+			final DataOutputStream dos = new DataOutputStream(new FileOutputStream(tmpFile));
+			try {
+				dos.writeLong(System.currentTimeMillis());
+				dos.write(data);
+			} finally {
+				dos.close();
+			}
+
+			synchronized (this) {
+				file.delete();
+				if (!tmpFile.renameTo(file)) {
+					throw new IOException("can't store tile to " + file);
+				}
+
+				final Long oldSize = index.put(name, file.length());
+				size += file.length() - (oldSize == null ? 0 : oldSize);
+
+				for (final Iterator<Entry<String, Long>> iter = index.entrySet().iterator(); size > maxSize && iter.hasNext(); ) {
+					final Entry<String, Long> entry = iter.next();
+					if (!entry.getKey().equals(name) && new File(dir, entry.getKey()).delete()) {
+						size -= entry.getValue();
+						iter.remove();
+					}
+				}
+			}
+		} finally {
+			tmpFile.delete();
+		}
+	}
+
+
+	synchronized int getHits() {
+		return hits;
+	}
+
+
+	synchronized int getMisses() {
+		return misses;
+	}
+
+
+	private static String toName(final String url) {
+		final byte[] digest;
+		try {
+			digest = MessageDigest.getInstance("SHA-1").digest(url.getBytes("UTF-8"));
+		} catch (final NoSuchAlgorithmException e) {
+			throw new RuntimeException(e); // should never happen
+		} catch (final UnsupportedEncodingException e) {
+			throw new RuntimeException(e); // should never happen
+		}
+
+		final StringBuilder sb = new StringBuilder(digest.length * 2 + SUFFIX.length());
+		for (final byte b : digest) {
+			sb.append(Character.forDigit((b >> 4) & 0xf, 16)).append(Character.forDigit(b & 0xf, 16));
+		}
+		return sb.append(SUFFIX).toString();
+	}
+
+}
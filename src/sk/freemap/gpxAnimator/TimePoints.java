@@ -0,0 +1,290 @@
+/*
+ *  Copyright 2013 Martin Ždila, Freemap Slovakia
+ *  Licensed under the Apache License, Version 2.0 (the "License");
+ *  you may not use this file except in compliance with the License.
+ *  You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *  Unless required by applicable law or agreed to in writing, software
+ *  distributed under the License is distributed on an "AS IS" BASIS,
+ *  WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *  See the License for the specific language governing permissions and
+ *  limitations under the License.
+ */
+package sk.freemap.gpxAnimator;
+
+import java.util.Arrays;
+import java.util.Comparator;
+
+/**
+ * Points sorted by unique time, stored in primitive columns.
+ */
+final class TimePoints {
+
+	private final long[] times;
+
+	private final double[] xs;
+
+	private final double[] ys;
+
+	// null if no point has a name
+	private final String[] names;
+
+
+	private TimePoints(final long[] times, final double[] xs, final double[] ys, final String[] names) {
+		this.times = times;
+		this.xs = xs;
+		this.ys = ys;
+		this.names = names;
+	}
+
+
+	int size() {
+		return times.length;
+	}
+
+
+	boolean isEmpty() {
+		return times.length == 0;
+	}
+
+
+	long getTime(final int index) {
+		return times[index];
+	}
+
+
+	double getX(final int index) {
+		return xs[index];
+	}
+
+
+	double getY(final int index) {
+		return ys[index];
+	}
+
+
+	String getName(final int index) {
+		return names == null ? null : names[index];
+	}
+
+
+	long getFirstTime() {
+		return times[0];
+	}
+
+
+	long getLastTime() {
+		return times[times.length - 1];
+	}
+
+
+	/**
+	 * @return index of the last point with time less than or equal to the given one or -1 if there is no such point
+	 */
+	int floorIndex(final long time) {
+		final int index = Arrays.binarySearch(times, time);
+		return index >= 0 ? index : -index - 2;
+	}
+
+
+	/**
+	 * @return index of the first point with time greater than or equal to the given one or {@link #size()} if there is no such point
+	 */
+	int ceilingIndex(final long time) {
+		final int index = Arrays.binarySearch(times, time);
+		return index >= 0 ? index : -index - 1;
+	}
+
+
+	/**
+	 * Same as {@link #floorIndex(long)}, but searches forward from the given index, so visiting increasing times
+	 * costs amortized constant time per call.
+	 *
+	 * @param fromIndex result of the previous call for lower or equal time, or -1
+	 */
+	int floorIndexFrom(final int fromIndex, final long time) {
+		int index = fromIndex;
+		while (index + 1 < times.length && times[index + 1] <= time) {
+			index++;
+		}
+		return index;
+	}
+
+
+	/**
+	 * @return ratio from 0 to 1 of the given time between the point at the given index and the next one; 0 for the last point
+	 */
+	double getRatio(final int floorIndex, final long time) {
+		if (floorIndex + 1 >= times.length) {
+			return 0.0;
+		}
+		return (double) (time - times[floorIndex]) / (times[floorIndex + 1] - times[floorIndex]);
+	}
+
+
+	/**
+	 * @return x linearly interpolated between the point at the given index and the next one
+	 */
+	double getX(final int floorIndex, final double ratio) {
+		return ratio == 0.0 ? xs[floorIndex] : xs[floorIndex] + (xs[floorIndex + 1] - xs[floorIndex]) * ratio;
+	}
+
+
+	/**
+	 * @return y linearly interpolated between the point at the given index and the next one
+	 */
+	double getY(final int floorIndex, final double ratio) {
+		return ratio == 0.0 ? ys[floorIndex] : ys[floorIndex] + (ys[floorIndex + 1] - ys[floorIndex]) * ratio;
+	}
+
+
+	/**
+	 * Translates and scales the points to image coordinates.
+	 */
+	void toImage(final double minX, final double maxY, final double scale) {
+		for (int i = 0; i < times.length; i++) {
+			xs[i] = (xs[i] - minX) * scale;
+			ys[i] = (maxY - ys[i]) * scale;
+		}
+	}
+
+
+	/**
+	 * Drops points closer than the tolerance to the previously kept point; the first and the last point are always kept.
+	 * Kept points retain their times, so a path drawn through them up to some time stays within the tolerance
+	 * of the path through all points.
+	 *
+	 * @param tolerance distance in the units of coordinates
+	 * @return points with dropped points or this if no point is dropped
+	 */
+	TimePoints simplify(final double tolerance) {
+		final int n = times.length;
+		if (n <= 2 || tolerance <= 0.0) {
+			return this;
+		}
+
+		final double tolerance2 = tolerance * tolerance;
+		final int[] kept = new int[n];
+		int size = 0;
+		kept[size++] = 0;
+		for (int i = 1; i < n - 1; i++) {
+			final int last = kept[size - 1];
+			final double dx = xs[i] - xs[last];
+			final double dy = ys[i] - ys[last];
+			if (dx * dx + dy * dy > tolerance2) {
+				kept[size++] = i;
+			}
+		}
+		kept[size++] = n - 1;
+
+		if (size == n) {
+			return this;
+		}
+
+		final long[] keptTimes = new long[size];
+		final double[] keptXs = new double[size];
+		final double[] keptYs = new double[size];
+		final String[] keptNames = names == null ? null : new String[size];
+		for (int i = 0; i < size; i++) {
+			final int j = kept[i];
+			keptTimes[i] = times[j];
+			keptXs[i] = xs[j];
+			keptYs[i] = ys[j];
+			if (keptNames != null) {
+				keptNames[i] = names[j];
+			}
+		}
+
+		return new TimePoints(keptTimes, keptXs, keptYs, keptNames);
+	}
+
+
+	static final class Builder {
+
+		private long[] times = new long[16];
+
+		private double[] xs = new double[16];
+
+		private double[] ys = new double[16];
+
+		private String[] names;
+
+		private int size;
+
+
+		Builder add(final long time, final double x, final double y, final String name) {
+			if (size == times.length) {
+				final int capacity = size * 2;
+				times = Arrays.copyOf(times, capacity);
+				xs = Arrays.copyOf(xs, capacity);
+				ys = Arrays.copyOf(ys, capacity);
+				if (names != null) {
+					names = Arrays.copyOf(names, capacity);
+				}
+			}
+
+			if (name != null && names == null) {
+				names = new String[times.length];
+			}
+
+			times[size] = time;
+			xs[size] = x;
+			ys[size] = y;
+			if (names != null) {
+				names[size] = name;
+			}
+			size++;
+
+			return this;
+		}
+
+
+		/**
+		 * Sorts points by time; points with the same time are shifted by a millisecond to keep times unique.
+		 */
+		TimePoints build() {
+			boolean sorted = true;
+			for (int i = 1; i < size && sorted; i++) {
+				sorted = times[i - 1] <= times[i];
+			}
+
+			Integer[] order = null;
+			if (!sorted) {
+				order = new Integer[size];
+				for (int i = 0; i < size; i++) {
+					order[i] = i;
+				}
+
+				Arrays.sort(order, new Comparator<Integer>() {
+					@Override
+					public int compare(final Integer o1, final Integer o2) {
+						final long t1 = times[o1];
+						final long t2 = times[o2];
+						return t1 < t2 ? -1 : t1 == t2 ? 0 : 1;
+					}
+				});
+			}
+
+			final long[] sortedTimes = new long[size];
+			final double[] sortedXs = new double[size];
+			final double[] sortedYs = new double[size];
+			final String[] sortedNames = names == null ? null : new String[size];
+
+			for (int i = 0; i < size; i++) {
+				final int j = order == null ? i : order[i];
+				sortedTimes[i] = i > 0 && times[j] <= sortedTimes[i - 1] ? sortedTimes[i - 1] + 1 : times[j];
+				sortedXs[i] = xs[j];
+				sortedYs[i] = ys[j];
+				if (sortedNames != null) {
+					sortedNames[i] = names[j];
+				}
+			}
+
+			return new TimePoints(sortedTimes, sortedXs, sortedYs, sortedNames);
+		}
+
+	}
+
+}
@@ -14,8 +14,10 @@
  */
 package sk.freemap.gpxAnimator;
 
+import java.awt.Rectangle;
 import java.awt.image.BufferedImage;
 import java.awt.image.ColorModel;
+import java.awt.image.DataBufferByte;
 import java.awt.image.WritableRaster;
 
 final class Utils {
@@ -31,4 +33,25 @@ final class Utils {
 		return new BufferedImage(cm, raster, isAlphaPremultiplied, null);
 	}
 
+	/**
+	 * Copies rectangle (clipped to image bounds) between two images of the same size and type.
+	 */
+	static void copyRect(final BufferedImage src, final BufferedImage dst, final Rectangle rect) {
+		final Rectangle r = rect.intersection(new Rectangle(0, 0, src.getWidth(), src.getHeight()));
+		if (r.isEmpty()) {
+			return;
+		}
+
+		if (src.getType() == BufferedImage.TYPE_3BYTE_BGR && dst.getType() == BufferedImage.TYPE_3BYTE_BGR) {
+			final byte[] srcData = ((DataBufferByte) src.getRaster().getDataBuffer()).getData();
+			final byte[] dstData = ((DataBufferByte) dst.getRaster().getDataBuffer()).getData();
+			final int stride = src.getWidth() * 3;
+			for (int y = r.y, offset = r.y * stride + r.x * 3; y < r.y + r.height; y++, offset += stride) {
+				System.arraycopy(srcData, offset, dstData, offset, r.width * 3);
+			}
+		} else {
+			dst.getRaster().setRect(src.getRaster().createChild(r.x, r.y, r.width, r.height, r.x, r.y, null));
+		}
+	}
+
 }
@@ -0,0 +1,188 @@
+/*
+ *  Copyright 2013 Martin Ždila, Freemap Slovakia
+ *  Licensed under the Apache License, Version 2.0 (the "License");
+ *  you may not use this file except in compliance with the License.
+ *  You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *  Unless required by applicable law or agreed to in writing, software
+ *  distributed under the License is distributed on an "AS IS" BASIS,
+ *  WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *  See the License for the specific language governing permissions and
+ *  limitations under the License.
+ */
+package sk.freemap.gpxAnimator.frameWriter;
+
+import java.awt.image.BufferedImage;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.ThreadFactory;
+
+import sk.freemap.gpxAnimator.UserException;
+
+/**
+ * Passes frames to another frame writer running in its own thread. Frames added as images are copied to buffers
+ * from a fixed pool; when all of them wait for encoding, {@link #addFrame(BufferedImage)} blocks. Frame buffers
+ * are passed on without copying.
+ */
+public final class AsyncFrameWriter implements TimedFrameWriter {
+
+	private static final FrameBuffer END = new FrameBuffer(null, 1, 1);
+
+	private final FrameWriter frameWriter;
+
+	private final int queueSize;
+
+	private FrameBufferPool framePool; // created for size of the first copied frame
+
+	private final BlockingQueue<FrameBuffer> frameQueue;
+
+	private final Thread encoderThread;
+
+	private volatile Throwable failure;
+
+	private long encoderStall; // nanoseconds, written by encoder thread
+
+	private long encodeTime; // nanoseconds, written by encoder thread
+
+	private long rendererStall; // nanoseconds
+
+
+	/**
+	 * @param queueSize maximal number of frames waiting for encoding
+	 * @param threadFactory factory of the encoding thread
+	 */
+	public AsyncFrameWriter(final FrameWriter frameWriter, final int queueSize, final ThreadFactory threadFactory) {
+		this.frameWriter = frameWriter;
+		this.queueSize = queueSize;
+
+		frameQueue = new ArrayBlockingQueue<FrameBuffer>(queueSize);
+
+		encoderThread = threadFactory.newThread(new Runnable() {
+			@Override
+			public void run() {
+				encode();
+			}
+		});
+		encoderThread.setName("frame-encoder");
+		encoderThread.setDaemon(true);
+		encoderThread.start();
+	}
+
+
+	private void encode() {
+		try {
+			while (true) {
+				final long start = System.nanoTime();
+				final FrameBuffer frame = frameQueue.take();
+				encoderStall += System.nanoTime() - start;
+
+				if (frame == END) {
+					break;
+				}
+
+				// after failure just release the frames so that renderer does not block
+				if (failure == null) {
+					final long encodeStart = System.nanoTime();
+					try {
+						frameWriter.addFrame(frame);
+					} catch (final Throwable e) {
+						failure = e;
+					} finally {
+						encodeTime += System.nanoTime() - encodeStart;
+					}
+				} else {
+					frame.release();
+				}
+			}
+		} catch (final InterruptedException e) {
+			Thread.currentThread().interrupt();
+		}
+	}
+
+
+	@Override
+	public void addFrame(final BufferedImage bi) throws UserException {
+		checkFailure();
+
+		if (framePool == null) {
+			// one more frame is being encoded and one is waiting for space in the queue
+			framePool = new FrameBufferPool(queueSize + 2, bi.getWidth(), bi.getHeight());
+		}
+
+		try {
+			put(framePool.copyOf(bi));
+		} catch (final InterruptedException e) {
+			Thread.currentThread().interrupt();
+			throw new UserException("interrupted while waiting for frame encoder", e);
+		}
+	}
+
+
+	@Override
+	public void addFrame(final FrameBuffer frame) throws UserException {
+		boolean queued = false;
+		try {
+			checkFailure();
+			put(frame);
+			queued = true;
+		} catch (final InterruptedException e) {
+			Thread.currentThread().interrupt();
+			throw new UserException("interrupted while waiting for frame encoder", e);
+		} finally {
+			if (!queued) {
+				frame.release();
+			}
+		}
+	}
+
+
+	private void put(final FrameBuffer frame) throws InterruptedException {
+		final long start = System.nanoTime();
+		frameQueue.put(frame);
+		rendererStall += System.nanoTime() - start;
+	}
+
+
+	/**
+	 * @return time spent encoding frames by the wrapped writer; it does not include closing of the wrapped writer
+	 */
+	@Override
+	public long getEncodeTime() {
+		return encodeTime;
+	}
+
+
+	@Override
+	public void close() throws UserException {
+		try {
+			frameQueue.put(END);
+			encoderThread.join();
+		} catch (final InterruptedException e) {
+			Thread.currentThread().interrupt();
+			throw new UserException("interrupted while waiting for frame encoder", e);
+		}
+
+		// wrapped writer is closed also after failure so that its encoder is released
+		try {
+			checkFailure();
+		} finally {
+			frameWriter.close();
+		}
+
+		final long poolStall = framePool == null ? 0 : framePool.getStallTime();
+		System.out.println("Encoder waited for frames " + encoderStall / 1000000 + " ms, renderer waited for encoder " + (rendererStall / 1000000 + poolStall) + " ms");
+	}
+
+
+	private void checkFailure() throws UserException {
+		final Throwable e = failure;
+		if (e instanceof UserException) {
+			throw (UserException) e;
+		} else if (e != null) {
+			throw new RuntimeException("internal error when writing frame", e);
+		}
+	}
+
+}
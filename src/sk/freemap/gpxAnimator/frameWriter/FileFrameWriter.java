@@ -17,18 +17,44 @@ package sk.freemap.gpxAnimator.frameWriter;
 import java.awt.image.BufferedImage;
 import java.io.File;
 import java.io.IOException;
+import java.util.Iterator;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
 
+import javax.imageio.IIOImage;
 import javax.imageio.ImageIO;
+import javax.imageio.ImageWriteParam;
+import javax.imageio.ImageWriter;
+import javax.imageio.stream.ImageOutputStream;
 
 import sk.freemap.gpxAnimator.UserException;
 
-public final class FileFrameWriter implements FrameWriter {
+public final class FileFrameWriter implements TimedFrameWriter {
 	private final String frameFilePattern;
 	private final String imageType;
+	private final int firstFrame;
 	private int frame;
 	private final double fps;
+	private final Float compressionQuality;
 
-	public FileFrameWriter(final String frameFilePattern, final String imageType, final double fps) throws UserException {
+	// null if frames are written in the calling thread
+	private final ExecutorService executor;
+	private final int poolSize;
+	private FrameBufferPool framePool; // created for size of the first copied frame
+	private volatile UserException failure;
+	private final AtomicLong encodeTime = new AtomicLong(); // nanoseconds
+
+	/**
+	 * @param firstFrame number of the first frame used in its file name
+	 * @param threads number of frames written in parallel; frames are written in the calling thread if 1
+	 * @param compressionQuality compression quality from 0.0 to 1.0 or null for default
+	 * @param threadFactory factory of threads writing frames in parallel
+	 */
+	public FileFrameWriter(final String frameFilePattern, final String imageType, final double fps, final int firstFrame, final int threads, final Float compressionQuality,
+			final ThreadFactory threadFactory) throws UserException {
 		if (String.format(frameFilePattern, 100).equals(String.format(frameFilePattern, 200))) {
 			throw new UserException("output must be pattern, for example frame%08d.png");
 		}
@@ -36,21 +62,182 @@ public final class FileFrameWriter implements FrameWriter {
 		this.frameFilePattern = frameFilePattern;
 		this.imageType = imageType;
 		this.fps = fps;
+		this.firstFrame = firstFrame;
+		frame = firstFrame - 1;
+		this.compressionQuality = compressionQuality;
+
+		if (threads > 1) {
+			executor = Executors.newFixedThreadPool(threads, new ThreadFactory() {
+				@Override
+				public Thread newThread(final Runnable r) {
+					final Thread thread = threadFactory.newThread(r);
+					thread.setDaemon(true);
+					return thread;
+				}
+			});
+			poolSize = threads * 2;
+		} else {
+			executor = null;
+			poolSize = 0;
+		}
 	}
 
 	@Override
 	public void addFrame(final BufferedImage bi) throws UserException {
-		final File outputfile = new File(String.format(frameFilePattern, ++frame));
-	    try {
-			ImageIO.write(bi, imageType, outputfile);
+		if (executor == null) {
+			write(bi, nextFile());
+			return;
+		}
+
+		checkFailure();
+
+		if (framePool == null) {
+			framePool = new FrameBufferPool(poolSize, bi.getWidth(), bi.getHeight());
+		}
+
+		final FrameBuffer copy;
+		try {
+			copy = framePool.copyOf(bi);
+		} catch (final InterruptedException e) {
+			Thread.currentThread().interrupt();
+			throw new UserException("interrupted while waiting for frame writer", e);
+		}
+
+		addFrame(copy);
+	}
+
+	@Override
+	public void addFrame(final FrameBuffer frame) throws UserException {
+		final File outputfile = nextFile();
+
+		if (executor == null || failure != null) {
+			try {
+				checkFailure();
+				write(frame.getImage(), outputfile);
+			} finally {
+				frame.release();
+			}
+			return;
+		}
+
+		executor.execute(new Runnable() {
+			@Override
+			public void run() {
+				try {
+					if (failure == null) {
+						write(frame.getImage(), outputfile);
+					}
+				} catch (final UserException e) {
+					failure = e;
+				} finally {
+					frame.release();
+				}
+			}
+		});
+	}
+
+	// numbering follows order of added frames regardless of the order in which they are written
+	private File nextFile() {
+		return new File(String.format(frameFilePattern, ++frame));
+	}
+
+	/**
+	 * @return number of the first frame since the given one which has no file written
+	 */
+	public static int findMissingFrame(final String frameFilePattern, final int firstFrame) {
+		int frame = firstFrame;
+		while (new File(String.format(frameFilePattern, frame)).isFile()) {
+			frame++;
+		}
+		return frame;
+	}
+
+	// frame is written under temporary name first, so frame files which exist are always complete
+	private void write(final BufferedImage bi, final File outputfile) throws UserException {
+		final long start = System.nanoTime();
+		try {
+			final File tmpFile = new File(outputfile.getPath() + ".tmp");
+			writeFile(bi, tmpFile);
+			outputfile.delete();
+			if (!tmpFile.renameTo(outputfile)) {
+				tmpFile.delete();
+				throw new UserException("can't rename " + tmpFile + " to " + outputfile);
+			}
+		} finally {
+			encodeTime.addAndGet(System.nanoTime() - start);
+		}
+	}
+
+	private void writeFile(final BufferedImage bi, final File outputfile) throws UserException {
+		if (compressionQuality == null) {
+			try {
+				ImageIO.write(bi, imageType, outputfile);
+			} catch (final IOException e) {
+				throw new UserException("error writing frame to " + outputfile, e);
+			}
+			return;
+		}
+
+		final Iterator<ImageWriter> iter = ImageIO.getImageWritersByFormatName(imageType);
+		if (!iter.hasNext()) {
+			throw new UserException("no image writer for " + imageType);
+		}
+
+		final ImageWriter writer = iter.next();
+		try {
+			final ImageWriteParam param = writer.getDefaultWriteParam();
+			if (param.canWriteCompressed()) {
+				param.setCompressionMode(ImageWriteParam.MODE_EXPLICIT);
+				if (param.getCompressionType() == null) {
+					param.setCompressionType(param.getCompressionTypes()[0]);
+				}
+				param.setCompressionQuality(compressionQuality);
+			}
+
+			outputfile.delete();
+			final ImageOutputStream ios = ImageIO.createImageOutputStream(outputfile);
+			if (ios == null) {
+				throw new UserException("can't create " + outputfile);
+			}
+			try {
+				writer.setOutput(ios);
+				writer.write(null, new IIOImage(bi, null, null), param);
+			} finally {
+				ios.close();
+			}
 		} catch (final IOException e) {
 			throw new UserException("error writing frame to " + outputfile, e);
+		} finally {
+			writer.dispose();
+		}
+	}
+
+	private void checkFailure() throws UserException {
+		if (failure != null) {
+			throw failure;
 		}
 	}
 
 	@Override
-	public void close() {
+	public long getEncodeTime() {
+		return encodeTime.get();
+	}
+
+	@Override
+	public void close() throws UserException {
+		if (executor != null) {
+			executor.shutdown();
+			try {
+				executor.awaitTermination(Long.MAX_VALUE, TimeUnit.MILLISECONDS);
+			} catch (final InterruptedException e) {
+				Thread.currentThread().interrupt();
+				throw new UserException("interrupted while waiting for frame writer", e);
+			}
+			checkFailure();
+		}
+
 		System.out.println("To encode generated frames you may run this command:");
-		System.out.println("ffmpeg -i " + frameFilePattern + " -vcodec mpeg4 -b 3000k -r " + fps + " video.avi");
+		System.out.println("ffmpeg " + (firstFrame == 1 ? "" : "-start_number " + firstFrame + " ")
+				+ "-i " + frameFilePattern + " -vcodec mpeg4 -b 3000k -r " + fps + " video.avi");
 	}
-}
\ No newline at end of file
+}
@@ -0,0 +1,77 @@
+/*
+ *  Copyright 2013 Martin Ždila, Freemap Slovakia
+ *  Licensed under the Apache License, Version 2.0 (the "License");
+ *  you may not use this file except in compliance with the License.
+ *  You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *  Unless required by applicable law or agreed to in writing, software
+ *  distributed under the License is distributed on an "AS IS" BASIS,
+ *  WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *  See the License for the specific language governing permissions and
+ *  limitations under the License.
+ */
+package sk.freemap.gpxAnimator.frameWriter;
+
+import java.awt.Graphics;
+import java.awt.image.BufferedImage;
+import java.awt.image.DataBufferByte;
+
+/**
+ * Frame image of type {@link BufferedImage#TYPE_3BYTE_BGR} with direct access to its pixel bytes.
+ * Frame buffers belong to a {@link FrameBufferPool}; whoever holds the buffer is its owner and must either
+ * pass it on to another owner or release it back to the pool once the frame is not needed.
+ */
+public final class FrameBuffer {
+
+	private final FrameBufferPool pool;
+
+	private final BufferedImage image;
+
+	private final byte[] data;
+
+
+	FrameBuffer(final FrameBufferPool pool, final int width, final int height) {
+		this.pool = pool;
+		image = new BufferedImage(width, height, BufferedImage.TYPE_3BYTE_BGR);
+		data = ((DataBufferByte) image.getRaster().getDataBuffer()).getData();
+	}
+
+
+	public BufferedImage getImage() {
+		return image;
+	}
+
+
+	/**
+	 * @return pixels in BGR order, row by row without padding; changes are visible in the image
+	 */
+	public byte[] getData() {
+		return data;
+	}
+
+
+	/**
+	 * Copies the image of the same size to this buffer.
+	 */
+	public void copyFrom(final BufferedImage bi) {
+		if (bi.getType() == BufferedImage.TYPE_3BYTE_BGR && bi.getRaster().getParent() == null
+				&& bi.getRaster().getDataBuffer().getSize() == data.length) {
+			System.arraycopy(((DataBufferByte) bi.getRaster().getDataBuffer()).getData(), 0, data, 0, data.length);
+		} else {
+			final Graphics g = image.getGraphics();
+			g.drawImage(bi, 0, 0, null);
+			g.dispose();
+		}
+	}
+
+
+	/**
+	 * Returns the buffer to its pool. The buffer must not be used by the caller afterwards.
+	 */
+	public void release() {
+		pool.release(this);
+	}
+
+}
@@ -0,0 +1,97 @@
+/*
+ *  Copyright 2013 Martin Ždila, Freemap Slovakia
+ *  Licensed under the Apache License, Version 2.0 (the "License");
+ *  you may not use this file except in compliance with the License.
+ *  You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *  Unless required by applicable law or agreed to in writing, software
+ *  distributed under the License is distributed on an "AS IS" BASIS,
+ *  WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *  See the License for the specific language governing permissions and
+ *  limitations under the License.
+ */
+package sk.freemap.gpxAnimator.frameWriter;
+
+import java.awt.image.BufferedImage;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Fixed number of frame buffers of the same size, allocated when first needed and then recycled.
+ * When all of them are in use, {@link #acquire()} waits until some is released. Buffers may be
+ * acquired and released from any thread.
+ */
+public final class FrameBufferPool {
+
+	private final int size;
+
+	private final int width;
+
+	private final int height;
+
+	private final BlockingQueue<FrameBuffer> freeQueue;
+
+	private final AtomicInteger allocated = new AtomicInteger();
+
+	private final AtomicLong stallTime = new AtomicLong(); // nanoseconds
+
+
+	public FrameBufferPool(final int size, final int width, final int height) {
+		this.size = size;
+		this.width = width;
+		this.height = height;
+		freeQueue = new ArrayBlockingQueue<FrameBuffer>(size);
+	}
+
+
+	/**
+	 * @return free frame buffer owned by the caller
+	 */
+	public FrameBuffer acquire() throws InterruptedException {
+		final FrameBuffer frame = freeQueue.poll();
+		if (frame != null) {
+			return frame;
+		}
+
+		for (int n = allocated.get(); n < size; n = allocated.get()) {
+			if (allocated.compareAndSet(n, n + 1)) {
+				return new FrameBuffer(this, width, height);
+			}
+		}
+
+		final long start = System.nanoTime();
+		try {
+			return freeQueue.take();
+		} finally {
+			stallTime.addAndGet(System.nanoTime() - start);
+		}
+	}
+
+
+	/**
+	 * @return free frame buffer with a copy of the image, owned by the caller
+	 */
+	public FrameBuffer copyOf(final BufferedImage bi) throws InterruptedException {
+		final FrameBuffer frame = acquire();
+		frame.copyFrom(bi);
+		return frame;
+	}
+
+
+	void release(final FrameBuffer frame) {
+		freeQueue.add(frame);
+	}
+
+
+	/**
+	 * @return total time in milliseconds spent waiting for a free buffer
+	 */
+	public long getStallTime() {
+		return stallTime.get() / 1000000;
+	}
+
+}
@@ -20,8 +20,17 @@ import sk.freemap.gpxAnimator.UserException;
 
 public interface FrameWriter {
 
+	/**
+	 * Writes the frame. Caller may reuse the image once this method returns.
+	 */
 	void addFrame(BufferedImage bi) throws UserException;
 
+	/**
+	 * Writes the frame and takes over ownership of the buffer, which is released once it is not needed,
+	 * also when writing fails. Writers handing frames to other threads use the buffer without copying it.
+	 */
+	void addFrame(FrameBuffer frame) throws UserException;
+
 	void close() throws UserException;
 
 }
@@ -0,0 +1,174 @@
+/*
+ *  Copyright 2013 Martin Ždila, Freemap Slovakia
+ *  Licensed under the Apache License, Version 2.0 (the "License");
+ *  you may not use this file except in compliance with the License.
+ *  You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *  Unless required by applicable law or agreed to in writing, software
+ *  distributed under the License is distributed on an "AS IS" BASIS,
+ *  WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *  See the License for the specific language governing permissions and
+ *  limitations under the License.
+ */
+package sk.freemap.gpxAnimator.frameWriter;
+
+import java.awt.image.BufferedImage;
+import java.awt.image.DataBufferByte;
+import java.io.BufferedOutputStream;
+import java.io.File;
+import java.io.FileDescriptor;
+import java.io.FileNotFoundException;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.nio.charset.Charset;
+import java.util.Locale;
+
+import sk.freemap.gpxAnimator.UserException;
+
+/**
+ * Writes uncompressed frames to a file, named pipe or standard output, to be encoded by an external encoder.
+ * Raw BGR frames are written directly from the image raster. YUV4MPEG2 has no RGB format, so its frames
+ * are converted to 4:4:4 YUV.
+ */
+public final class RawFrameWriter implements FrameWriter {
+
+	public static final String STANDARD_OUTPUT = "-";
+
+	private static final Charset US_ASCII = Charset.forName("US-ASCII");
+
+	private static final byte[] FRAME_HEADER = "FRAME\n".getBytes(US_ASCII);
+
+	private final String name;
+
+	private final OutputStream os;
+
+	private final boolean y4m;
+
+	private final int width;
+
+	private final int height;
+
+	// image of supported type for frames of other types
+	private BufferedImage bgrImage;
+
+	// Y, U and V planes of YUV4MPEG2 frame
+	private byte[] yuv;
+
+
+	/**
+	 * @return true if frames written to given output should be uncompressed
+	 */
+	public static boolean isRawOutput(final File output) {
+		final String path = output.getPath().toLowerCase(Locale.ROOT);
+		return STANDARD_OUTPUT.equals(path) || path.endsWith(".y4m") || path.endsWith(".bgr") || path.endsWith(".raw");
+	}
+
+
+	/**
+	 * @param output .y4m file or standard output for YUV4MPEG2, .bgr or .raw file for raw BGR frames
+	 */
+	public RawFrameWriter(final File output, final double fps, final int width, final int height) throws UserException {
+		final String path = output.getPath();
+		final boolean toStandardOutput = STANDARD_OUTPUT.equals(path);
+
+		name = toStandardOutput ? "standard output" : path;
+		y4m = toStandardOutput || path.toLowerCase(Locale.ROOT).endsWith(".y4m");
+		this.width = width;
+		this.height = height;
+
+		try {
+			os = new BufferedOutputStream(toStandardOutput ? new FileOutputStream(FileDescriptor.out) : new FileOutputStream(output), 65536);
+		} catch (final FileNotFoundException e) {
+			throw new UserException("can't open " + output + " for writing", e);
+		}
+
+		if (y4m) {
+			final String header = "YUV4MPEG2 W" + width + " H" + height + " F" + Math.round(fps * 1000) + ":1000 Ip A1:1 C444\n";
+			try {
+				os.write(header.getBytes(US_ASCII));
+			} catch (final IOException e) {
+				throw new UserException("error writing to " + name, e);
+			}
+		} else {
+			System.out.println("To encode raw frames you may run this command:");
+			System.out.println("ffmpeg -f rawvideo -pix_fmt bgr24 -s " + width + "x" + height + " -r " + fps + " -i " + path + " video.mp4");
+		}
+	}
+
+
+	@Override
+	public void addFrame(final BufferedImage bi) throws UserException {
+		write(getBgr(bi));
+	}
+
+
+	@Override
+	public void addFrame(final FrameBuffer frame) throws UserException {
+		try {
+			write(frame.getData());
+		} finally {
+			frame.release();
+		}
+	}
+
+
+	private void write(final byte[] bgr) throws UserException {
+		try {
+			if (y4m) {
+				os.write(FRAME_HEADER);
+				os.write(toYuv(bgr));
+			} else {
+				os.write(bgr, 0, width * height * 3);
+			}
+		} catch (final IOException e) {
+			throw new UserException("error writing frame to " + name, e);
+		}
+	}
+
+
+	private byte[] getBgr(final BufferedImage bi) {
+		if (bi.getType() == BufferedImage.TYPE_3BYTE_BGR) {
+			return ((DataBufferByte) bi.getRaster().getDataBuffer()).getData();
+		}
+
+		if (bgrImage == null) {
+			bgrImage = new BufferedImage(width, height, BufferedImage.TYPE_3BYTE_BGR);
+		}
+		bgrImage.getGraphics().drawImage(bi, 0, 0, null);
+		return ((DataBufferByte) bgrImage.getRaster().getDataBuffer()).getData();
+	}
+
+
+	// BT.601 limited range, as expected by YUV4MPEG2 readers
+	private byte[] toYuv(final byte[] bgr) {
+		final int n = width * height;
+		if (yuv == null) {
+			yuv = new byte[n * 3];
+		}
+
+		for (int i = 0, j = 0; i < n; i++, j += 3) {
+			final int b = bgr[j] & 0xff;
+			final int g = bgr[j + 1] & 0xff;
+			final int r = bgr[j + 2] & 0xff;
+			yuv[i] = (byte) (((66 * r + 129 * g + 25 * b + 128) >> 8) + 16);
+			yuv[n + i] = (byte) (((-38 * r - 74 * g + 112 * b + 128) >> 8) + 128);
+			yuv[2 * n + i] = (byte) (((112 * r - 94 * g - 18 * b + 128) >> 8) + 128);
+		}
+
+		return yuv;
+	}
+
+
+	@Override
+	public void close() throws UserException {
+		try {
+			os.close();
+		} catch (final IOException e) {
+			throw new UserException("error writing to " + name, e);
+		}
+	}
+
+}
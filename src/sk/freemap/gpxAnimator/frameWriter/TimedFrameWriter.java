@@ -12,32 +12,17 @@
  *  See the License for the specific language governing permissions and
  *  limitations under the License.
  */
-package sk.freemap.gpxAnimator;
+package sk.freemap.gpxAnimator.frameWriter;
 
-public class LatLon {
-
-	private final double lat;
-	
-	private final double lon;
+/**
+ * Frame writer which measures the time of encoding frames itself. Frames may be encoded in other threads
+ * than the one adding them, so the time of adding a frame is not the time of encoding it.
+ */
+public interface TimedFrameWriter extends FrameWriter {
 
-	private final long time;
+	/**
+	 * @return total time in nanoseconds spent encoding frames, summed over all threads; complete once the writer is closed
+	 */
+	long getEncodeTime();
 
-	public LatLon(final double lat, final double lon, final long time) {
-		this.lat = lat;
-		this.lon = lon;
-		this.time = time;
-	}
-	
-	public double getLat() {
-		return lat;
-	}
-	
-	public double getLon() {
-		return lon;
-	}
-	
-	public long getTime() {
-		return time;
-	}
-	
 }
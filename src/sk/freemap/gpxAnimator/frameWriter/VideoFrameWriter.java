@@ -26,16 +26,32 @@ public final class VideoFrameWriter implements FrameWriter {
 	private final IMediaWriter writer;
 	private int frame;
 	private final double interval;
+	private final long startTime;
 	
-	public VideoFrameWriter(final File file, final double fps, final int width, final int height) {
+	/**
+	 * @param firstFrame number of the first frame in the complete animation; video starts at time 0 but
+	 *        frames keep their timing from the complete animation, so separately rendered parts can be concatenated
+	 */
+	public VideoFrameWriter(final File file, final double fps, final int firstFrame, final int width, final int height) {
 		writer = ToolFactory.makeWriter(file.toString());
 		writer.addVideoStream(0, 0, IRational.make(fps), width, height);
 		interval = 1000d / fps;
+		frame = firstFrame - 1;
+		startTime = (long) (frame * interval);
 	}
 
 	@Override
 	public void addFrame(final BufferedImage bi) {
-		writer.encodeVideo(0, bi, (int) (frame++ * interval), TimeUnit.MILLISECONDS);
+		writer.encodeVideo(0, bi, (long) (frame++ * interval) - startTime, TimeUnit.MILLISECONDS);
+	}
+
+	@Override
+	public void addFrame(final FrameBuffer frame) {
+		try {
+			addFrame(frame.getImage());
+		} finally {
+			frame.release();
+		}
 	}
 
 	@Override